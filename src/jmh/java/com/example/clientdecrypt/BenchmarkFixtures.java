@@ -0,0 +1,55 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Shared inputs for the benchmarks: the demo encryption key pair under {@code config/keys/}
+ * (override the directory with {@code -Dbench.keys=...}) and the example decrypted payload.
+ */
+final class BenchmarkFixtures {
+    static final Path KEYS_DIR = Path.of(System.getProperty("bench.keys", "config/keys"));
+    static final Path CERTIFICATE = KEYS_DIR.resolve("demo-encryption.crt");
+    static final Path PRIVATE_KEY = KEYS_DIR.resolve("demo-encryption.key");
+    static final Path PAYLOAD = Path.of(System.getProperty("bench.payload", "examples/chekcoutDecryptedCardResponse.json"));
+
+    private BenchmarkFixtures() {
+    }
+
+    static String payloadJson() throws IOException {
+        return Files.readString(PAYLOAD);
+    }
+
+    /**
+     * Writes a throwaway properties file that satisfies {@link AppConfig} and points the
+     * encryption certificate and decryption key at the demo key pair.
+     */
+    static AppConfig config(String... extraProperties) throws IOException {
+        requireFile(CERTIFICATE);
+        requireFile(PRIVATE_KEY);
+        StringBuilder properties = new StringBuilder()
+            .append("baseUrl=https://localhost/srci/api\n")
+            .append("consumerKey=benchmark-consumer-key\n")
+            .append("signingKeyPath=unused.p12\n")
+            .append("signingKeyAlias=unused\n")
+            .append("signingKeyPassword=unused\n")
+            .append("srcDpaId=benchmark-src-dpa\n")
+            .append("encryptionCertificatePath=").append(CERTIFICATE.toAbsolutePath()).append('\n')
+            .append("decryptionKeyPlainPath=").append(PRIVATE_KEY.toAbsolutePath()).append('\n');
+        for (String property : extraProperties) {
+            properties.append(property).append('\n');
+        }
+        Path file = Files.createTempFile("benchmark", ".properties");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, properties);
+        return AppConfig.load(file);
+    }
+
+    private static void requireFile(Path path) {
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalStateException("Missing " + path.toAbsolutePath()
+                + "; generate the demo key pair (see README) or pass -Dbench.keys=<dir>.");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One output row through the {@link CsvOutputSink} and row builder the batch commands use, and
+ * through the commons-csv {@link CSVPrinter} whose output the sink reproduces, written to a
+ * discarding stream so only formatting cost is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvWriteBenchmark {
+    private final PayloadDecryptor.DecryptedResult decrypted = new PayloadDecryptor.DecryptedResult(
+        "5204731600014784", "12", "2026", "John Doe",
+        "5455030208766644", "12", "2026", "5001a9f027e5629d11e3949a0800b",
+        "CARD_APPLICATION_CRYPTOGRAM_SHORT_FORM",
+        "2223344556677889900112233445566778899001122334455667788990345",
+        "1682371012");
+
+    private CSVPrinter printer;
+    private CsvOutputSink sink;
+
+    @Setup
+    public void setUp() throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+            .setHeader(DecryptedRows.HEADER)
+            .build();
+        printer = new CSVPrinter(new BufferedWriter(Writer.nullWriter()), format);
+        sink = new CsvOutputSink(new BufferedOutputStream(OutputStream.nullOutputStream(), 64 * 1024), false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        printer.close();
+        sink.close();
+    }
+
+    @Benchmark
+    public void writeRow() throws IOException {
+        sink.write(DecryptedRows.of("5000000000000001", "merchant-tx-0001", decrypted));
+    }
+
+    @Benchmark
+    public void writeBlankRow() throws IOException {
+        sink.write(DecryptedRows.blank("5000000000000001", "merchant-tx-0001"));
+    }
+
+    @Benchmark
+    public void printRow() throws IOException {
+        printer.printRecord(DecryptedRows.of("5000000000000001", "merchant-tx-0001", decrypted));
+    }
+
+    @Benchmark
+    public void printBlankRow() throws IOException {
+        printer.printRecord(DecryptedRows.blank("5000000000000001", "merchant-tx-0001"));
+    }
+}
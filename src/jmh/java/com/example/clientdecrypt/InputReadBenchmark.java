@@ -0,0 +1,83 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads both input columns of every row of a generated file, through commons-csv as for stdin
+ * and gzip inputs, and through {@link MappedCsvReader} as for plain files. Scores are per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputReadBenchmark {
+    private static final int ROWS = 200_000;
+    private static final CSVFormat INPUT_FORMAT = CSVFormat.DEFAULT.builder()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setTrim(true)
+        .build();
+
+    private Path input;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = Files.createTempFile("input-read-benchmark", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("cardNumber,merchantTransactionId,note\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write((5000000000000000L + i) + ",merchant-tx-" + i + ",batch 2024-06\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void commonsCsv(Blackhole blackhole) throws IOException {
+        try (InputRows rows = InputRows.of(new CSVParser(Files.newBufferedReader(input), INPUT_FORMAT))) {
+            consume(rows, blackhole);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapped(Blackhole blackhole) throws IOException {
+        try (InputRows rows = MappedCsvReader.open(input)) {
+            consume(rows, blackhole);
+        }
+    }
+
+    private static void consume(InputRows rows, Blackhole blackhole) throws IOException {
+        while (rows.next()) {
+            blackhole.consume(rows.cardNumber());
+            blackhole.consume(rows.merchantTransactionId());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.clientdecrypt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One output row through each {@link OutputSink} format, written to a discarding stream so only
+ * encoding cost is measured. Arrow rows include their share of the record batch writes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputSinkBenchmark {
+    private final Object[] row = DecryptedRows.of("5000000000000001", "merchant-tx-0001", new PayloadDecryptor.DecryptedResult(
+        "5204731600014784", "12", "2026", "John Doe",
+        "5455030208766644", "12", "2026", "5001a9f027e5629d11e3949a0800b",
+        "CARD_APPLICATION_CRYPTOGRAM_SHORT_FORM",
+        "2223344556677889900112233445566778899001122334455667788990345",
+        "1682371012"));
+
+    @Param({OutputSink.CSV, OutputSink.JSONL, OutputSink.ARROW})
+    private String format;
+
+    private OutputSink sink;
+
+    @Setup
+    public void setUp() throws IOException {
+        sink = OutputSink.open(format, new BufferedOutputStream(OutputStream.nullOutputStream(), 64 * 1024), false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sink.close();
+    }
+
+    @Benchmark
+    public void writeRow() throws IOException {
+        sink.write(row);
+    }
+}
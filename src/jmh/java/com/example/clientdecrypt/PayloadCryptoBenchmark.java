@@ -0,0 +1,57 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PayloadEncryptor#encrypt} and {@link PayloadDecryptor#decrypt} over the example checkout
+ * payload. With {@code contentKeyCacheSize=0} every decrypt pays for the RSA unwrap; with a
+ * non-zero size the repeated payload hits the content-key cache, i.e. the duplicate-row case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadCryptoBenchmark {
+    @Param({"0", "1024"})
+    public int contentKeyCacheSize;
+
+    private PayloadEncryptor encryptor;
+    private PayloadDecryptor decryptor;
+    private String payloadJson;
+    private String encryptedPayload;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        AppConfig config = BenchmarkFixtures.config("contentKeyCacheSize=" + contentKeyCacheSize);
+        encryptor = new PayloadEncryptor(config);
+        decryptor = new PayloadDecryptor(mapper, config);
+        payloadJson = BenchmarkFixtures.payloadJson();
+        encryptedPayload = mapper.readTree(encryptor.encrypt(payloadJson)).path("encryptedValue").asText();
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return encryptor.encrypt(payloadJson);
+    }
+
+    @Benchmark
+    public PayloadDecryptor.DecryptedResult decrypt() throws Exception {
+        return decryptor.decrypt(encryptedPayload);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.clientdecrypt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OAuth 1.0a RSA-SHA256 signing of a /checkout request body, exactly as {@link CheckoutClient} does it,
+ * with either {@link RequestSigner} ({@code oauthSigner=library} or {@code cached}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+    @Param({"library", "cached"})
+    private String signer;
+
+    private URI uri;
+    private byte[] payload;
+    private RequestSigner requestSigner;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        PrivateKey signingKey = generator.generateKeyPair().getPrivate();
+        requestSigner = "library".equals(signer)
+            ? new OAuthLibrarySigner("benchmark-consumer-key", signingKey)
+            : new CachedOAuthSigner("benchmark-consumer-key", signingKey);
+        uri = URI.create("https://sandbox.api.mastercard.com/srci/api/checkout");
+        payload = ("{\"srcDpaId\":\"a3cd162a-437a-456c-82a1-43666a26a285\",\"checkoutType\":\"CLICK_TO_PAY\","
+            + "\"checkoutReference\":{\"type\":\"MERCHANT_TRANSACTION_ID\",\"data\":{\"merchantTransactionId\":\"0x1f2e3d4c\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String authorizationHeader() throws IOException {
+        return requestSigner.authorizationHeader(uri, "POST", payload);
+    }
+}
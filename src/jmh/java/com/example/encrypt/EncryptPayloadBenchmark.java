@@ -0,0 +1,42 @@
+package com.example.encrypt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PayloadEncryptor#encrypt} as used by {@code EncryptPayloadApp}, with the demo certificate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptPayloadBenchmark {
+    private PayloadEncryptor encryptor;
+    private String payloadJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path keysDir = Path.of(System.getProperty("bench.keys", "config/keys"));
+        encryptor = new PayloadEncryptor(keysDir.resolve("demo-encryption.crt"));
+        payloadJson = Files.readString(Path.of(System.getProperty("bench.payload", "examples/chekcoutDecryptedCardResponse.json")));
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return encryptor.encrypt(payloadJson);
+    }
+}
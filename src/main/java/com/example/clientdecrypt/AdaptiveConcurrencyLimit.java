@@ -0,0 +1,104 @@
+package com.example.clientdecrypt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AIMD concurrency limit: grows by roughly one slot per window of successful requests and
+ * halves when the API throttles, never exceeding the configured maximum or dropping below one.
+ */
+final class AdaptiveConcurrencyLimit {
+    private static final long DECREASE_COOLDOWN_NANOS = 1_000_000_000L;
+
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    AdaptiveConcurrencyLimit(int maxLimit) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("maxLimit must be at least 1.");
+        }
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+        this.lastDecreaseNanos = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Takes a slot without blocking.
+     *
+     * @return a future that completes once the slot is taken; slots freed by {@link #release()}
+     *         go to these waiters in order before any thread blocked in {@link #acquire()}
+     */
+    CompletableFuture<Void> acquireAsync() {
+        synchronized (this) {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> permit = new CompletableFuture<>();
+            waiters.addLast(permit);
+            return permit;
+        }
+    }
+
+    void release() {
+        List<CompletableFuture<Void>> admitted;
+        synchronized (this) {
+            inFlight--;
+            admitted = admitWaiters();
+            notifyAll();
+        }
+        // Completed outside the lock: the first stage of an admitted call runs in complete().
+        admitted.forEach(permit -> permit.complete(null));
+    }
+
+    void onSuccess() {
+        List<CompletableFuture<Void>> admitted;
+        synchronized (this) {
+            if (limit >= maxLimit) {
+                return;
+            }
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            admitted = admitWaiters();
+            notifyAll();
+        }
+        admitted.forEach(permit -> permit.complete(null));
+    }
+
+    /**
+     * Halves the limit. A burst of throttled responses from the same window only counts once.
+     */
+    synchronized void onThrottle() {
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(1, limit / 2);
+    }
+
+    synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    private List<CompletableFuture<Void>> admitWaiters() {
+        List<CompletableFuture<Void>> admitted = new ArrayList<>();
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            admitted.add(waiters.removeFirst());
+        }
+        return admitted;
+    }
+}
@@ -4,10 +4,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 final class AppConfig {
+    private static final String TENANT_PREFIX = "tenant.";
+    private static final Pattern TENANT_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path source;
+    private final Map<String, String> overrides;
+    private final String tenant;
     private final String baseUrl;
     private final String consumerKey;
     private final String signingKeyPath;
@@ -16,13 +27,37 @@ final class AppConfig {
     private final String srcDpaId;
     private final String organizationId;
     private final String checkoutType;
+    private final String openApiClientId;
+    private final String oauthSigner;
     private final String encryptionCertificatePath;
     private final String decryptionKeyPath;
     private final String decryptionKeyAlias;
     private final String decryptionKeyPassword;
     private final String decryptionKeyPlainPath;
+    private final String decryptionKeyId;
+    private final List<String> additionalDecryptionKeyPaths;
+    private final int decryptionKeyReloadSeconds;
+    private final int contentKeyCacheSize;
+    private final int resultCacheSize;
+    private final long resultCacheTtlSeconds;
+    private final int connectTimeoutMillis;
+    private final int requestTimeoutMillis;
+    private final int httpClientThreads;
+    private final double rateLimitPerSecond;
+    private final int rateLimitBurst;
+    private final int maxAttempts;
+    private final int retryBaseDelayMillis;
+    private final int retryMaxDelayMillis;
+    private final double hedgePercentile;
+    private final int hedgeMinDelayMillis;
+    private final double hedgeBudgetPercent;
+    private final int weight;
+    private final int maxConcurrency;
 
-    private AppConfig(Properties properties) {
+    private AppConfig(Path source, Map<String, String> overrides, Properties properties, String tenant) {
+        this.source = source;
+        this.overrides = overrides;
+        this.tenant = tenant;
         this.baseUrl = get(properties, "baseUrl", "https://sandbox.api.mastercard.com/srci/api");
         this.consumerKey = require(properties, "consumerKey");
         this.signingKeyPath = require(properties, "signingKeyPath");
@@ -31,11 +66,34 @@ final class AppConfig {
         this.srcDpaId = get(properties, "srcDpaId", null);
         this.organizationId = get(properties, "organizationId", null);
         this.checkoutType = get(properties, "checkoutType", "CLICK_TO_PAY");
+        // The client id is the part of the consumer key before '!'.
+        this.openApiClientId = get(properties, "openApiClientId",
+            consumerKey.indexOf('!') < 0 ? consumerKey : consumerKey.substring(0, consumerKey.indexOf('!')));
+        this.oauthSigner = get(properties, "oauthSigner", "library");
         this.encryptionCertificatePath = get(properties, "encryptionCertificatePath", null);
         this.decryptionKeyPath = get(properties, "decryptionKeyPath", null);
         this.decryptionKeyAlias = get(properties, "decryptionKeyAlias", null);
         this.decryptionKeyPassword = get(properties, "decryptionKeyPassword", null);
         this.decryptionKeyPlainPath = get(properties, "decryptionKeyPlainPath", null);
+        this.decryptionKeyId = get(properties, "decryptionKeyId", null);
+        this.additionalDecryptionKeyPaths = getList(properties, "additionalDecryptionKeyPaths");
+        this.decryptionKeyReloadSeconds = getInt(properties, "decryptionKeyReloadSeconds", 0);
+        this.contentKeyCacheSize = getInt(properties, "contentKeyCacheSize", 0);
+        this.resultCacheSize = getInt(properties, "resultCacheSize", 0);
+        this.resultCacheTtlSeconds = getInt(properties, "resultCacheTtlSeconds", 300);
+        this.connectTimeoutMillis = getInt(properties, "connectTimeoutMillis", 10_000);
+        this.requestTimeoutMillis = getInt(properties, "requestTimeoutMillis", 30_000);
+        this.httpClientThreads = getInt(properties, "httpClientThreads", 0);
+        this.rateLimitPerSecond = getDouble(properties, "rateLimitPerSecond", 0);
+        this.rateLimitBurst = getInt(properties, "rateLimitBurst", 0);
+        this.maxAttempts = getInt(properties, "maxAttempts", 4);
+        this.retryBaseDelayMillis = getInt(properties, "retryBaseDelayMillis", 200);
+        this.retryMaxDelayMillis = getInt(properties, "retryMaxDelayMillis", 20_000);
+        this.hedgePercentile = getDouble(properties, "hedgePercentile", 0);
+        this.hedgeMinDelayMillis = getInt(properties, "hedgeMinDelayMillis", 20);
+        this.hedgeBudgetPercent = getDouble(properties, "hedgeBudgetPercent", 5);
+        this.weight = getInt(properties, "weight", 1);
+        this.maxConcurrency = getInt(properties, "maxConcurrency", 0);
 
         if (srcDpaId != null && organizationId != null) {
             throw new IllegalArgumentException("Provide only one of srcDpaId or organizationId.");
@@ -43,6 +101,9 @@ final class AppConfig {
         if (srcDpaId == null && organizationId == null) {
             throw new IllegalArgumentException("Provide srcDpaId or organizationId.");
         }
+        if (!"cached".equals(oauthSigner) && !"library".equals(oauthSigner)) {
+            throw new IllegalArgumentException("oauthSigner must be cached or library: " + oauthSigner);
+        }
         boolean hasPkcs12 = decryptionKeyPath != null;
         boolean hasPlain = decryptionKeyPlainPath != null;
         if (!hasPkcs12 && !hasPlain) {
@@ -52,14 +113,131 @@ final class AppConfig {
             require(properties, "decryptionKeyAlias");
             require(properties, "decryptionKeyPassword");
         }
+        if (decryptionKeyReloadSeconds < 0) {
+            throw new IllegalArgumentException("decryptionKeyReloadSeconds must not be negative.");
+        }
+        if (contentKeyCacheSize < 0) {
+            throw new IllegalArgumentException("contentKeyCacheSize must not be negative.");
+        }
+        if (resultCacheSize < 0 || resultCacheTtlSeconds < 0) {
+            throw new IllegalArgumentException("resultCacheSize and resultCacheTtlSeconds must not be negative.");
+        }
+        if (connectTimeoutMillis <= 0 || requestTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("connectTimeoutMillis and requestTimeoutMillis must be positive.");
+        }
+        if (httpClientThreads < 0) {
+            throw new IllegalArgumentException("httpClientThreads must not be negative.");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1.");
+        }
+        if (retryBaseDelayMillis < 0 || retryMaxDelayMillis < retryBaseDelayMillis) {
+            throw new IllegalArgumentException("retryBaseDelayMillis must be non-negative and not exceed retryMaxDelayMillis.");
+        }
+        if (hedgePercentile < 0 || hedgePercentile >= 100) {
+            throw new IllegalArgumentException("hedgePercentile must be 0 (disabled) or between 0 and 100.");
+        }
+        if (hedgeMinDelayMillis < 0 || hedgeBudgetPercent < 0) {
+            throw new IllegalArgumentException("hedgeMinDelayMillis and hedgeBudgetPercent must not be negative.");
+        }
+        if (weight < 1 || maxConcurrency < 0) {
+            throw new IllegalArgumentException("weight must be at least 1 and maxConcurrency must not be negative.");
+        }
     }
 
     static AppConfig load(Path path) throws IOException {
+        return load(path, Map.of());
+    }
+
+    /**
+     * Loads {@code path} and then applies {@code overrides} on top, e.g. to point a load test at a local mock.
+     */
+    static AppConfig load(Path path, Map<String, String> overrides) throws IOException {
+        Properties properties = read(path);
+        properties.putAll(overrides);
+        return new AppConfig(path, Map.copyOf(overrides), properties, null);
+    }
+
+    /**
+     * Loads a multi-tenant config: {@code tenants} lists the tenant names, and every
+     * {@code tenant.<name>.<property>} sets {@code <property>} for that tenant only, on top of the
+     * properties outside any tenant block, which all tenants share.
+     *
+     * @return each tenant's config in the order listed, or an empty map if {@code tenants} is not set
+     */
+    static Map<String, AppConfig> loadTenants(Path path) throws IOException {
+        Properties properties = read(path);
+        List<String> names = getList(properties, "tenants");
+        Map<String, AppConfig> tenants = new LinkedHashMap<>();
+        if (names.isEmpty()) {
+            return tenants;
+        }
+        Properties shared = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(TENANT_PREFIX)) {
+                shared.setProperty(key, properties.getProperty(key));
+            } else if (!names.contains(key.substring(TENANT_PREFIX.length()).split("\\.", 2)[0])) {
+                throw new IllegalArgumentException("Config property " + key + " is for a tenant not listed in tenants.");
+            }
+        }
+        for (String name : names) {
+            if (!TENANT_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Tenant names may only contain letters, digits, - and _: " + name);
+            }
+            if (tenants.containsKey(name)) {
+                throw new IllegalArgumentException("Tenant " + name + " is listed twice in tenants.");
+            }
+            Properties merged = new Properties();
+            merged.putAll(shared);
+            String prefix = TENANT_PREFIX + name + ".";
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    merged.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+                }
+            }
+            try {
+                tenants.put(name, new AppConfig(path, Map.of(), merged, name));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Tenant " + name + ": " + ex.getMessage(), ex);
+            }
+        }
+        return tenants;
+    }
+
+    /**
+     * Reads this config's file again, with the same overrides and for the same tenant.
+     */
+    AppConfig reload() throws IOException {
+        if (tenant == null) {
+            return load(source, overrides);
+        }
+        AppConfig reloaded = loadTenants(source).get(tenant);
+        if (reloaded == null) {
+            throw new IllegalArgumentException("Tenant " + tenant + " is no longer listed in tenants.");
+        }
+        return reloaded;
+    }
+
+    private static Properties read(Path path) throws IOException {
         Properties properties = new Properties();
         try (InputStream inputStream = Files.newInputStream(path)) {
             properties.load(inputStream);
         }
-        return new AppConfig(properties);
+        return properties;
+    }
+
+    /**
+     * @return the file this config was read from
+     */
+    Path source() {
+        return source;
+    }
+
+    /**
+     * @return the tenant this config belongs to, or {@code null} for a single-tenant config
+     */
+    String tenant() {
+        return tenant;
     }
 
     String baseUrl() {
@@ -94,6 +272,17 @@ final class AppConfig {
         return checkoutType;
     }
 
+    /**
+     * @return the {@code X-Openapi-Clientid} header value for {@code /checkout/confirmations}
+     */
+    String openApiClientId() {
+        return openApiClientId;
+    }
+
+    String oauthSigner() {
+        return oauthSigner;
+    }
+
     String encryptionCertificatePath() {
         return encryptionCertificatePath;
     }
@@ -114,6 +303,91 @@ final class AppConfig {
         return decryptionKeyPlainPath;
     }
 
+    String decryptionKeyId() {
+        return decryptionKeyId;
+    }
+
+    List<String> additionalDecryptionKeyPaths() {
+        return additionalDecryptionKeyPaths;
+    }
+
+    int decryptionKeyReloadSeconds() {
+        return decryptionKeyReloadSeconds;
+    }
+
+    int contentKeyCacheSize() {
+        return contentKeyCacheSize;
+    }
+
+    int resultCacheSize() {
+        return resultCacheSize;
+    }
+
+    long resultCacheTtlSeconds() {
+        return resultCacheTtlSeconds;
+    }
+
+    int connectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    int requestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    int httpClientThreads() {
+        return httpClientThreads;
+    }
+
+    double rateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    int rateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    int retryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    int retryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    /**
+     * @return the percentile of checkout latency after which a request is hedged, or 0 if hedging is off
+     */
+    double hedgePercentile() {
+        return hedgePercentile;
+    }
+
+    int hedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    double hedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    /**
+     * @return the tenant's share of concurrent checkout calls relative to the other tenants
+     */
+    int weight() {
+        return weight;
+    }
+
+    /**
+     * @return the most checkout calls the tenant may have in flight, or 0 for no cap of its own
+     */
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+
     private static String get(Properties properties, String key, String defaultValue) {
         String value = properties.getProperty(key);
         if (value == null || value.isBlank()) {
@@ -122,6 +396,44 @@ final class AppConfig {
         return value.trim();
     }
 
+    /**
+     * @return the comma-separated, trimmed, non-empty entries of {@code key}
+     */
+    private static List<String> getList(Properties properties, String key) {
+        String value = get(properties, key, null);
+        if (value == null) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(","))
+            .map(String::trim)
+            .filter(entry -> !entry.isEmpty())
+            .toList();
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue) {
+        String value = get(properties, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Config property " + key + " must be an integer: " + value);
+        }
+    }
+
+    private static double getDouble(Properties properties, String key, double defaultValue) {
+        String value = get(properties, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Config property " + key + " must be a number: " + value);
+        }
+    }
+
     private static String require(Properties properties, String key) {
         String value = get(properties, key, null);
         if (value == null) {
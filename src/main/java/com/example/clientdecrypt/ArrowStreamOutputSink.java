@@ -0,0 +1,345 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Apache Arrow IPC streaming format ({@code .arrows}) for the fixed output schema: 13 non-null
+ * {@code utf8} columns. Rows are buffered column by column and written as one record batch per
+ * {@value #BATCH_ROWS} rows, or whenever the sink is flushed (i.e. at every checkpoint), so a
+ * stream truncated at a checkpoint ends on a batch boundary and can be appended to. Readers
+ * such as pyarrow ({@code pyarrow.ipc.open_stream}), DuckDB or Polars load it without parsing.
+ *
+ * <p>The schema and record batch metadata are small, fixed flatbuffers, so they are encoded
+ * here directly instead of pulling in the Arrow Java libraries and their off-heap allocator.
+ */
+final class ArrowStreamOutputSink implements OutputSink {
+    static final int BATCH_ROWS = 65_536;
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final short METADATA_VERSION_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+    private static final byte TYPE_UTF8 = 5;
+    private static final int COLUMNS = DecryptedRows.HEADER.length;
+    /** Bytes of the end-of-stream marker written by {@link #close()}. */
+    static final int EOS_LENGTH = 8;
+
+    private final OutputStream outputStream;
+    private final Column[] columns = new Column[COLUMNS];
+    private final ByteBuffer scratch = ByteBuffer.allocate(Math.max(8, (BATCH_ROWS + 1) * Integer.BYTES))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    private int rows;
+
+    /**
+     * @param append {@code true} when continuing a stream truncated at a checkpoint, which
+     *               already starts with the schema
+     */
+    ArrowStreamOutputSink(OutputStream outputStream, boolean append) throws IOException {
+        this.outputStream = outputStream;
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Column();
+        }
+        if (!append) {
+            writeMessage(schemaMetadata());
+        }
+    }
+
+    @Override
+    public void write(Object[] row) throws IOException {
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i].add((String) row[i]);
+        }
+        if (++rows == BATCH_ROWS) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBatch();
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (outputStream) {
+            writeBatch();
+            // End-of-stream marker.
+            writeInt(CONTINUATION);
+            writeInt(0);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        // Per column: an empty validity bitmap (no nulls), int32 offsets, UTF-8 data; each padded to 8 bytes.
+        long[] buffers = new long[COLUMNS * 6];
+        long bodyLength = 0;
+        for (int i = 0; i < COLUMNS; i++) {
+            long offsetsLength = (long) (rows + 1) * Integer.BYTES;
+            buffers[i * 6] = bodyLength;
+            buffers[i * 6 + 1] = 0;
+            buffers[i * 6 + 2] = bodyLength;
+            buffers[i * 6 + 3] = offsetsLength;
+            bodyLength += padded(offsetsLength);
+            buffers[i * 6 + 4] = bodyLength;
+            buffers[i * 6 + 5] = columns[i].size;
+            bodyLength += padded(columns[i].size);
+        }
+
+        writeMessage(recordBatchMetadata(rows, buffers, bodyLength));
+        for (Column column : columns) {
+            scratch.clear();
+            for (int row = 0; row <= rows; row++) {
+                scratch.putInt(column.offsets[row]);
+            }
+            outputStream.write(scratch.array(), 0, scratch.position());
+            writePadding(scratch.position());
+            outputStream.write(column.bytes, 0, column.size);
+            writePadding(column.size);
+            column.clear();
+        }
+        rows = 0;
+    }
+
+    /**
+     * Encapsulated IPC message: continuation marker, metadata length, flatbuffer metadata padded
+     * to 8 bytes. The body, if any, follows.
+     */
+    private void writeMessage(byte[] metadata) throws IOException {
+        int paddedLength = (int) padded(metadata.length);
+        writeInt(CONTINUATION);
+        writeInt(paddedLength);
+        outputStream.write(metadata);
+        writePadding(metadata.length);
+    }
+
+    private void writeInt(int value) throws IOException {
+        scratch.clear();
+        scratch.putInt(value);
+        outputStream.write(scratch.array(), 0, Integer.BYTES);
+    }
+
+    private void writePadding(long length) throws IOException {
+        int padding = (int) (padded(length) - length);
+        for (int i = 0; i < padding; i++) {
+            outputStream.write(0);
+        }
+    }
+
+    private static long padded(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    /**
+     * {@code Message { version: V5, header: Schema { fields: [Field { name, nullable, type: Utf8, children: [] }] } }}
+     */
+    private static byte[] schemaMetadata() {
+        FlatBufferWriter fb = new FlatBufferWriter();
+        int root = fb.reserveRootOffset();
+        Table message = fb.table(2, 1, 4, 8);
+        fb.setOffset(root, message.start());
+        fb.putShort(message.field(0), METADATA_VERSION_V5);
+        fb.putByte(message.field(1), HEADER_SCHEMA);
+        fb.putLong(message.field(3), 0);
+
+        // Schema: endianness (default Little, omitted), fields.
+        Table schema = fb.table(0, 4);
+        fb.setOffset(message.field(2), schema.start());
+        int fields = fb.offsetVector(COLUMNS);
+        fb.setOffset(schema.field(1), fields);
+        for (int i = 0; i < COLUMNS; i++) {
+            // Field: name, nullable, type_type, type, dictionary (omitted), children.
+            Table field = fb.table(4, 1, 1, 4, 0, 4);
+            fb.setOffset(FlatBufferWriter.vectorElement(fields, i, Integer.BYTES), field.start());
+            // Not nullable: DecryptedRows writes a missing value as the empty string.
+            fb.putByte(field.field(1), (byte) 0);
+            fb.putByte(field.field(2), TYPE_UTF8);
+            fb.setOffset(field.field(0), fb.string(DecryptedRows.HEADER[i]));
+            fb.setOffset(field.field(3), fb.table().start());
+            fb.setOffset(field.field(5), fb.offsetVector(0));
+        }
+        return fb.toByteArray();
+    }
+
+    /**
+     * {@code Message { version: V5, header: RecordBatch { length, nodes, buffers }, bodyLength }}
+     *
+     * @param buffers (offset, length) pairs, three buffers per column
+     */
+    private static byte[] recordBatchMetadata(int rows, long[] buffers, long bodyLength) {
+        FlatBufferWriter fb = new FlatBufferWriter();
+        int root = fb.reserveRootOffset();
+        Table message = fb.table(2, 1, 4, 8);
+        fb.setOffset(root, message.start());
+        fb.putShort(message.field(0), METADATA_VERSION_V5);
+        fb.putByte(message.field(1), HEADER_RECORD_BATCH);
+        fb.putLong(message.field(3), bodyLength);
+
+        Table batch = fb.table(8, 4, 4);
+        fb.setOffset(message.field(2), batch.start());
+        fb.putLong(batch.field(0), rows);
+        // FieldNode { length: long, null_count: long } per column.
+        int nodes = fb.structVector(COLUMNS, 16);
+        fb.setOffset(batch.field(1), nodes);
+        for (int i = 0; i < COLUMNS; i++) {
+            fb.putLong(FlatBufferWriter.vectorElement(nodes, i, 16), rows);
+            fb.putLong(FlatBufferWriter.vectorElement(nodes, i, 16) + 8, 0);
+        }
+        // Buffer { offset: long, length: long } per buffer.
+        int bufferVector = fb.structVector(buffers.length / 2, 16);
+        fb.setOffset(batch.field(2), bufferVector);
+        for (int i = 0; i < buffers.length / 2; i++) {
+            fb.putLong(FlatBufferWriter.vectorElement(bufferVector, i, 16), buffers[i * 2]);
+            fb.putLong(FlatBufferWriter.vectorElement(bufferVector, i, 16) + 8, buffers[i * 2 + 1]);
+        }
+        return fb.toByteArray();
+    }
+
+    /**
+     * Values of one {@code utf8} column for the current batch.
+     */
+    private static final class Column {
+        private final int[] offsets = new int[BATCH_ROWS + 1];
+        private byte[] bytes = new byte[64 * 1024];
+        private int size;
+        private int count;
+
+        void add(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            if (size + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+            offsets[++count] = size;
+        }
+
+        void clear() {
+            size = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * Table position and the absolute positions of its fields (0 for omitted fields).
+     */
+    private record Table(int start, int[] fields) {
+        int field(int id) {
+            return fields[id];
+        }
+    }
+
+    /**
+     * Writes a flatbuffer front to back: every object is appended after the one referring to
+     * it, so all {@code uoffset}s point forward as the format requires, and each vtable is
+     * placed directly before its table. Enough for the fixed Arrow metadata above.
+     */
+    private static final class FlatBufferWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(2048).order(ByteOrder.LITTLE_ENDIAN);
+
+        int reserveRootOffset() {
+            return allocate(4, 4);
+        }
+
+        /**
+         * Appends a vtable and a table with the given field sizes in field-id order; a size of 0
+         * omits the field. Fields are zero until set.
+         */
+        Table table(int... fieldSizes) {
+            int vtable = allocate(2, 4 + 2 * fieldSizes.length);
+            int start = allocate(4, 4);
+            int[] fields = new int[fieldSizes.length];
+            for (int id = 0; id < fieldSizes.length; id++) {
+                if (fieldSizes[id] > 0) {
+                    fields[id] = allocate(fieldSizes[id], fieldSizes[id]);
+                }
+            }
+            buffer.putShort(vtable, (short) (4 + 2 * fieldSizes.length));
+            buffer.putShort(vtable + 2, (short) (buffer.position() - start));
+            for (int id = 0; id < fieldSizes.length; id++) {
+                buffer.putShort(vtable + 4 + 2 * id, (short) (fields[id] == 0 ? 0 : fields[id] - start));
+            }
+            buffer.putInt(start, start - vtable);
+            return new Table(start, fields);
+        }
+
+        int string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int start = allocate(4, 4 + bytes.length + 1);
+            buffer.putInt(start, bytes.length);
+            buffer.put(start + 4, bytes);
+            return start;
+        }
+
+        /**
+         * Appends a vector of {@code length} offsets to be set with {@link #setOffset}.
+         */
+        int offsetVector(int length) {
+            int start = allocate(4, 4 + 4 * length);
+            buffer.putInt(start, length);
+            return start;
+        }
+
+        /**
+         * Appends a vector of {@code length} structs of {@code size} bytes, 8-byte aligned.
+         */
+        int structVector(int length, int size) {
+            // The length prefix sits just before the first element, which must be 8-aligned.
+            while ((buffer.position() + 4) % 8 != 0) {
+                allocate(1, 1);
+            }
+            int start = allocate(4, 4 + length * size);
+            buffer.putInt(start, length);
+            return start;
+        }
+
+        static int vectorElement(int vector, int index, int size) {
+            return vector + 4 + index * size;
+        }
+
+        /**
+         * Points the {@code uoffset} at {@code at} to {@code target}, which lies after it.
+         */
+        void setOffset(int at, int target) {
+            buffer.putInt(at, target - at);
+        }
+
+        void putByte(int at, byte value) {
+            buffer.put(at, value);
+        }
+
+        void putShort(int at, short value) {
+            buffer.putShort(at, value);
+        }
+
+        void putLong(int at, long value) {
+            buffer.putLong(at, value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        /**
+         * Reserves {@code length} zeroed bytes at the next multiple of {@code alignment}.
+         */
+        private int allocate(int alignment, int length) {
+            int start = (buffer.position() + alignment - 1) / alignment * alignment;
+            if (start + length > buffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, start + length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(0, buffer, 0, buffer.position());
+                buffer = grown;
+            }
+            buffer.position(start + length);
+            return start;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-row outcome log of a batch run, one JSON object per output row:
+ * <pre>
+ * {"row":7,"merchantTransactionId":"m-7","outcome":"TIMEOUT","retryable":true,"attempts":3,
+ *  "shared":false,"httpMillis":30012.4,"decryptMillis":0.0,"rowMillis":31840.2,"error":"request timed out"}
+ * </pre>
+ * {@code outcome} is {@code OK} or an {@link ErrorCategory}; {@code httpStatus} and
+ * {@code correlationId} are present when a response carried them.
+ *
+ * <p>The pipeline's writer thread hands each record to a background thread through a bounded
+ * single-producer ring buffer and never waits on it: if the log falls behind, for example on a
+ * stalled disk, records are dropped and counted, and the count is reported on close.
+ */
+final class AuditLog implements Closeable {
+    static final int DEFAULT_CAPACITY = 1 << 16;
+    static final String OK = "OK";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path file;
+    private final JsonGenerator generator;
+    private final RowTrace[] ring;
+    private final int mask;
+    // Next slot the writer thread reads, and next slot the pipeline fills.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    private long row;
+    private long dropped;
+    private IOException failure;
+
+    private AuditLog(Path file, JsonGenerator generator, int capacity, long firstRow) {
+        this.file = file;
+        this.generator = generator;
+        this.ring = new RowTrace[capacity];
+        this.mask = capacity - 1;
+        this.row = firstRow;
+        this.writer = generator == null ? null : Thread.ofPlatform()
+            .name("audit-log")
+            .daemon(true)
+            .start(this::drain);
+    }
+
+    /**
+     * @param afterRow rows already logged by an interrupted run being resumed; the log is
+     *                 appended to when positive and truncated otherwise
+     */
+    static AuditLog open(Path file, long afterRow) throws IOException {
+        BufferedOutputStream outputStream = new BufferedOutputStream(afterRow > 0
+            ? Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+            : Files.newOutputStream(file));
+        JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+        return new AuditLog(file, generator, DEFAULT_CAPACITY, afterRow);
+    }
+
+    /**
+     * A log that records nothing, for runs without {@code --audit-log}.
+     */
+    static AuditLog none() {
+        return new AuditLog(null, null, 1, 0);
+    }
+
+    static Path auditLogPathFor(Path output) {
+        return output.resolveSibling(output.getFileName() + ".audit.jsonl");
+    }
+
+    /**
+     * Logs the next output row. Called from a single thread, in output order.
+     */
+    void record(RowTrace trace) {
+        row++;
+        if (writer == null) {
+            return;
+        }
+        long next = tail.get();
+        if (next - head.get() == ring.length) {
+            dropped++;
+            return;
+        }
+        trace.logged(row);
+        ring[(int) next & mask] = trace;
+        tail.lazySet(next + 1);
+    }
+
+    /**
+     * Reads the merchantTransactionIds whose rows failed with a {@linkplain ErrorCategory#retryable()
+     * retryable} category in the given logs and never succeeded. A torn last line is ignored.
+     */
+    static Set<String> retryableFailures(ObjectMapper mapper, Iterable<Path> files) throws IOException {
+        Map<String, Boolean> retry = new HashMap<>();
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonNode record;
+                    try {
+                        record = mapper.readTree(line);
+                    } catch (IOException ignored) {
+                        // Torn line from a crash; its row is logged again by the resumed run.
+                        continue;
+                    }
+                    String merchantTransactionId = record.path("merchantTransactionId").textValue();
+                    if (merchantTransactionId == null || merchantTransactionId.isEmpty()) {
+                        continue;
+                    }
+                    if (OK.equals(record.path("outcome").textValue())) {
+                        retry.put(merchantTransactionId, false);
+                    } else if (record.path("retryable").asBoolean()) {
+                        retry.putIfAbsent(merchantTransactionId, true);
+                    }
+                }
+            }
+        }
+        Set<String> merchantTransactionIds = new HashSet<>();
+        retry.forEach((merchantTransactionId, retryable) -> {
+            if (retryable) {
+                merchantTransactionIds.add(merchantTransactionId);
+            }
+        });
+        return merchantTransactionIds;
+    }
+
+    /**
+     * Writes out the records still buffered and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            generator.close();
+        } catch (IOException ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+        if (dropped > 0) {
+            System.err.println("Audit log " + file + " fell behind and dropped " + dropped + " records; it is incomplete.");
+        }
+        if (failure != null) {
+            throw new IOException("Could not write audit log " + file + ": " + failure.getMessage(), failure);
+        }
+    }
+
+    private void drain() {
+        try {
+            long next = head.get();
+            while (true) {
+                // Read before tail: once closed is set, every record has been published.
+                boolean finished = closed;
+                long end = tail.get();
+                if (next == end) {
+                    if (finished) {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                for (; next < end; next++) {
+                    int slot = (int) next & mask;
+                    write(ring[slot]);
+                    ring[slot] = null;
+                    head.lazySet(next + 1);
+                }
+                generator.flush();
+            }
+        } catch (IOException ex) {
+            // Leave head where it stopped: the ring fills and further records count as dropped.
+            failure = ex;
+        }
+    }
+
+    private void write(RowTrace trace) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("row", trace.row());
+        generator.writeStringField("merchantTransactionId", trace.merchantTransactionId());
+        ErrorCategory category = trace.category();
+        generator.writeStringField("outcome", category == null ? OK : category.name());
+        if (category != null) {
+            generator.writeBooleanField("retryable", category.retryable());
+        }
+        if (trace.statusCode() != 0) {
+            generator.writeNumberField("httpStatus", trace.statusCode());
+        }
+        if (trace.correlationId() != null) {
+            generator.writeStringField("correlationId", trace.correlationId());
+        }
+        generator.writeNumberField("attempts", trace.attempts());
+        generator.writeBooleanField("shared", trace.isShared());
+        generator.writeNumberField("httpMillis", millis(trace.httpNanos()));
+        generator.writeNumberField("decryptMillis", millis(trace.decryptNanos()));
+        generator.writeNumberField("rowMillis", millis(trace.rowNanos()));
+        if (trace.error() != null) {
+            generator.writeStringField("error", trace.error());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
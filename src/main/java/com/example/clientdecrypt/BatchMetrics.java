@@ -0,0 +1,259 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-stage latency histograms for a batch run. Recording is lock-free so it can sit
+ * on the hot path of every row; reports are computed from the live counters on demand.
+ */
+final class BatchMetrics {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    enum Stage {
+        /** Building the request body and OAuth 1.0a signature. */
+        SIGN,
+        /** HTTP round trip of a single checkout attempt. */
+        HTTP,
+        /** JWE decryption and field extraction. */
+        DECRYPT,
+        /** Writing one output row. */
+        WRITE,
+        /** One input row end to end: checkout including retries, then decrypt. */
+        ROW;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+    private final LongAdder rowsSucceeded = new LongAdder();
+    private final LongAdder rowsFailed = new LongAdder();
+    private final LongAdder rowsDeduplicated = new LongAdder();
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final long startedNanos = System.nanoTime();
+
+    BatchMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    LatencyHistogram stage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    void recordStage(Stage stage, long startNanos) {
+        stages.get(stage).recordSince(startNanos);
+    }
+
+    /**
+     * Counts the result of one checkout attempt: an HTTP status code, or the exception type when
+     * no response was received.
+     */
+    void recordResponse(String outcome) {
+        responses.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    void recordRetry(String outcome) {
+        retries.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    void rowSucceeded() {
+        rowsSucceeded.increment();
+    }
+
+    void rowFailed() {
+        rowsFailed.increment();
+    }
+
+    /**
+     * Counts a row served from an in-flight or cached result for the same merchantTransactionId.
+     */
+    void rowDeduplicated() {
+        rowsDeduplicated.increment();
+    }
+
+    /**
+     * Counts a hedged checkout request sent alongside a slow one.
+     */
+    void hedgeSent() {
+        hedgesSent.increment();
+    }
+
+    /**
+     * Counts a hedged request that answered before the request it hedged.
+     */
+    void hedgeWon() {
+        hedgesWon.increment();
+    }
+
+    long rowsSucceeded() {
+        return rowsSucceeded.sum();
+    }
+
+    long rowsFailed() {
+        return rowsFailed.sum();
+    }
+
+    long rowsDone() {
+        return rowsSucceeded.sum() + rowsFailed.sum();
+    }
+
+    /**
+     * @return {@code "429"} for a {@link CheckoutException}, otherwise the exception's simple class name
+     */
+    static String outcome(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            return outcome(failure.getCause());
+        }
+        if (failure instanceof CheckoutException checkoutException) {
+            return Integer.toString(checkoutException.statusCode());
+        }
+        return failure.getClass().getSimpleName();
+    }
+
+    double elapsedSeconds() {
+        return (System.nanoTime() - startedNanos) / 1e9;
+    }
+
+    /**
+     * @param rowsPerSecond recent throughput computed by the caller over its reporting interval
+     */
+    String progressLine(double rowsPerSecond) {
+        LatencyHistogram http = stages.get(Stage.HTTP);
+        return String.format(Locale.ROOT,
+            "[%6.0fs] rows=%d ok=%d failed=%d rate=%.1f/s retries=%d http p50=%.1fms p99=%.1fms",
+            elapsedSeconds(), rowsDone(), rowsSucceeded.sum(), rowsFailed.sum(), rowsPerSecond,
+            sum(retries), millis(http.percentileNanos(50)), millis(http.percentileNanos(99)));
+    }
+
+    String summary() {
+        StringBuilder summary = new StringBuilder();
+        double seconds = elapsedSeconds();
+        summary.append(String.format(Locale.ROOT, "Processed %d rows (%d ok, %d failed) in %.1f s, %.1f rows/s%n",
+            rowsDone(), rowsSucceeded.sum(), rowsFailed.sum(), seconds, seconds > 0 ? rowsDone() / seconds : 0));
+        if (rowsDeduplicated.sum() > 0) {
+            summary.append(String.format(Locale.ROOT, "Deduplicated %d rows without another API call%n", rowsDeduplicated.sum()));
+        }
+        if (hedgesSent.sum() > 0) {
+            summary.append(String.format(Locale.ROOT, "Hedged %d slow requests, %d answered first%n", hedgesSent.sum(), hedgesWon.sum()));
+        }
+        summary.append("Responses: ").append(format(responses)).append(System.lineSeparator());
+        summary.append("Retries:   ").append(format(retries)).append(System.lineSeparator());
+        summary.append(String.format(Locale.ROOT, "%-8s %9s %9s %9s %9s %9s %9s %9s%n",
+            "stage", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages.get(stage);
+            if (histogram.count() == 0) {
+                continue;
+            }
+            summary.append(String.format(Locale.ROOT, "%-8s %9d %7.2fms", stage.label(), histogram.count(), histogram.meanNanos() / 1e6));
+            for (double percentile : PERCENTILES) {
+                summary.append(String.format(Locale.ROOT, " %7.2fms", millis(histogram.percentileNanos(percentile))));
+            }
+            summary.append(String.format(Locale.ROOT, " %7.2fms%n", millis(histogram.maxNanos())));
+        }
+        return summary.toString();
+    }
+
+    ObjectNode toJson(ObjectMapper mapper) {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("elapsedSeconds", elapsedSeconds());
+        root.putObject("rows")
+            .put("succeeded", rowsSucceeded.sum())
+            .put("failed", rowsFailed.sum())
+            .put("deduplicated", rowsDeduplicated.sum());
+        root.putObject("hedges")
+            .put("sent", hedgesSent.sum())
+            .put("won", hedgesWon.sum());
+        ObjectNode responseNode = root.putObject("responses");
+        sorted(responses).forEach(responseNode::put);
+        ObjectNode retryNode = root.putObject("retries");
+        sorted(retries).forEach(retryNode::put);
+        ObjectNode stageNode = root.putObject("stages");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages.get(stage);
+            ObjectNode node = stageNode.putObject(stage.label());
+            node.put("count", histogram.count());
+            node.put("meanMillis", histogram.meanNanos() / 1e6);
+            for (double percentile : PERCENTILES) {
+                node.put("p" + percentileLabel(percentile) + "Millis", millis(histogram.percentileNanos(percentile)));
+            }
+            node.put("maxMillis", millis(histogram.maxNanos()));
+        }
+        return root;
+    }
+
+    /**
+     * Prometheus text exposition format (0.0.4). Latencies are exported as summaries in seconds.
+     */
+    String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE client_decrypt_rows_total counter\n");
+        text.append("client_decrypt_rows_total{result=\"ok\"} ").append(rowsSucceeded.sum()).append('\n');
+        text.append("client_decrypt_rows_total{result=\"failed\"} ").append(rowsFailed.sum()).append('\n');
+        text.append("# TYPE client_decrypt_rows_deduplicated_total counter\n");
+        text.append("client_decrypt_rows_deduplicated_total ").append(rowsDeduplicated.sum()).append('\n');
+        text.append("# TYPE client_decrypt_hedges_total counter\n");
+        text.append("client_decrypt_hedges_total{result=\"sent\"} ").append(hedgesSent.sum()).append('\n');
+        text.append("client_decrypt_hedges_total{result=\"won\"} ").append(hedgesWon.sum()).append('\n');
+        text.append("# TYPE client_decrypt_responses_total counter\n");
+        sorted(responses).forEach((outcome, count) ->
+            text.append("client_decrypt_responses_total{outcome=\"").append(outcome).append("\"} ").append(count).append('\n'));
+        text.append("# TYPE client_decrypt_retries_total counter\n");
+        sorted(retries).forEach((outcome, count) ->
+            text.append("client_decrypt_retries_total{outcome=\"").append(outcome).append("\"} ").append(count).append('\n'));
+        text.append("# TYPE client_decrypt_stage_seconds summary\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages.get(stage);
+            String labels = "stage=\"" + stage.label() + "\"";
+            for (double percentile : PERCENTILES) {
+                text.append("client_decrypt_stage_seconds{").append(labels)
+                    .append(",quantile=\"").append(BigDecimal.valueOf(percentile).movePointLeft(2).toPlainString()).append("\"} ")
+                    .append(histogram.percentileNanos(percentile) / 1e9).append('\n');
+            }
+            text.append("client_decrypt_stage_seconds_sum{").append(labels).append("} ")
+                .append(histogram.meanNanos() * histogram.count() / 1e9).append('\n');
+            text.append("client_decrypt_stage_seconds_count{").append(labels).append("} ")
+                .append(histogram.count()).append('\n');
+        }
+        return text.toString();
+    }
+
+    static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static String percentileLabel(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static long sum(Map<String, LongAdder> counters) {
+        return counters.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private static Map<String, Long> sorted(Map<String, LongAdder> counters) {
+        Map<String, Long> sorted = new TreeMap<>();
+        counters.forEach((key, value) -> sorted.put(key, value.sum()));
+        return sorted;
+    }
+
+    private static String format(Map<String, LongAdder> counters) {
+        return counters.isEmpty() ? "none" : sorted(counters).toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OAuth 1.0a {@code RSA-SHA256} signer producing the same signature base string and header
+ * parameters as the Mastercard oauth1-signer library, with the per-request work cut down to
+ * what actually varies:
+ * <ul>
+ *   <li>the signature base string is precomputed per method and URI with gaps for the body hash,
+ *       nonce and timestamp, already percent-encoded;</li>
+ *   <li>{@link Signature} engines are initialised with the signing key once and pooled, as are
+ *       the SHA-256 {@link MessageDigest}s used for {@code oauth_body_hash}.</li>
+ * </ul>
+ * The RSA private-key operation itself remains and dominates the cost.
+ */
+final class CachedOAuthSigner implements RequestSigner {
+    private static final String SIGNATURE_METHOD = "RSA-SHA256";
+    private static final String VERSION = "1.0";
+    private static final String GAP = "\u0000";
+    private static final char[] NONCE_ALPHABET =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final int NONCE_LENGTH = 16;
+    private static final Base64.Encoder BASE64 = Base64.getEncoder();
+
+    private final String consumerKey;
+    private final InstancePool<Signature> signatures;
+    private final InstancePool<MessageDigest> digests = new InstancePool<>(() -> MessageDigest.getInstance("SHA-256"));
+    // One entry per method and URI: POST /checkout and POST /checkout/confirmations.
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    CachedOAuthSigner(String consumerKey, PrivateKey signingKey) {
+        this.consumerKey = consumerKey;
+        this.signatures = new InstancePool<>(() -> {
+            // sign() resets the engine to its initialised state, so initSign runs once per instance.
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signingKey);
+            return signature;
+        });
+    }
+
+    @Override
+    public String authorizationHeader(URI uri, String method, byte[] body) throws IOException {
+        try {
+            String bodyHash = bodyHash(body);
+            String nonce = nonce();
+            String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+            String signature = sign(signatureBaseString(uri, method, bodyHash, nonce, timestamp));
+            return new StringBuilder(512)
+                .append("OAuth oauth_body_hash=\"").append(bodyHash)
+                .append("\",oauth_consumer_key=\"").append(consumerKey)
+                .append("\",oauth_nonce=\"").append(nonce)
+                .append("\",oauth_signature=\"").append(percentEncode(signature))
+                .append("\",oauth_signature_method=\"").append(SIGNATURE_METHOD)
+                .append("\",oauth_timestamp=\"").append(timestamp)
+                .append("\",oauth_version=\"").append(VERSION)
+                .append('"')
+                .toString();
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Could not sign " + method + " " + uri + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * The signature base string for one request, from the cached template of its method and URI.
+     */
+    String signatureBaseString(URI uri, String method, String bodyHash, String nonce, String timestamp) {
+        Template template = templates.computeIfAbsent(method + ' ' + uri, key -> template(uri, method));
+        return template.baseString(bodyHash, nonce, timestamp);
+    }
+
+    private String bodyHash(byte[] body) throws GeneralSecurityException {
+        MessageDigest digest = digests.borrow();
+        try {
+            return BASE64.encodeToString(digest.digest(body));
+        } finally {
+            digests.release(digest);
+        }
+    }
+
+    private String sign(String baseString) throws GeneralSecurityException {
+        Signature signature = signatures.borrow();
+        signature.update(baseString.getBytes(StandardCharsets.UTF_8));
+        byte[] signed = signature.sign();
+        // Only returned on success; an engine that threw is in an unknown state and is dropped.
+        signatures.release(signature);
+        return BASE64.encodeToString(signed);
+    }
+
+    private String nonce() {
+        byte[] bytes = new byte[NONCE_LENGTH];
+        random.nextBytes(bytes);
+        char[] nonce = new char[NONCE_LENGTH];
+        for (int i = 0; i < NONCE_LENGTH; i++) {
+            nonce[i] = NONCE_ALPHABET[(bytes[i] & 0xff) % NONCE_ALPHABET.length];
+        }
+        return new String(nonce);
+    }
+
+    /**
+     * Builds the signature base string for {@code uri} with the query and OAuth parameters sorted
+     * as the library does, and splits it at the body hash, nonce and timestamp. Percent-encoding
+     * the fragments separately is the same as encoding the whole parameter string.
+     */
+    private Template template(URI uri, String method) {
+        SortedMap<String, List<String>> parameters = queryParameters(uri);
+        parameters.computeIfAbsent("oauth_body_hash", key -> new ArrayList<>()).add(GAP);
+        parameters.computeIfAbsent("oauth_consumer_key", key -> new ArrayList<>()).add(consumerKey);
+        parameters.computeIfAbsent("oauth_nonce", key -> new ArrayList<>()).add(GAP);
+        parameters.computeIfAbsent("oauth_signature_method", key -> new ArrayList<>()).add(SIGNATURE_METHOD);
+        parameters.computeIfAbsent("oauth_timestamp", key -> new ArrayList<>()).add(GAP);
+        parameters.computeIfAbsent("oauth_version", key -> new ArrayList<>()).add(VERSION);
+
+        StringJoiner parameterString = new StringJoiner("&");
+        for (Map.Entry<String, List<String>> entry : parameters.entrySet()) {
+            List<String> values = entry.getValue();
+            Collections.sort(values);
+            for (String value : values) {
+                parameterString.add(entry.getKey() + "=" + value);
+            }
+        }
+        String[] fragments = parameterString.toString().split(GAP, -1);
+        if (fragments.length != 4) {
+            throw new IllegalArgumentException("Cannot sign " + uri + ": its query repeats OAuth parameters.");
+        }
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = percentEncode(fragments[i]);
+        }
+        fragments[0] = method.toUpperCase(Locale.ROOT) + "&" + percentEncode(baseUri(uri)) + "&" + fragments[0];
+        return new Template(fragments);
+    }
+
+    /**
+     * Query parameters as the library collects them: keys and values are percent-encoded only
+     * when the query contained escapes.
+     */
+    private static SortedMap<String, List<String>> queryParameters(URI uri) {
+        SortedMap<String, List<String>> parameters = new TreeMap<>();
+        String decodedQuery = uri.getQuery();
+        String rawQuery = uri.getRawQuery();
+        if (decodedQuery == null || decodedQuery.isEmpty() || rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        boolean mustEncode = !decodedQuery.equals(rawQuery);
+        for (String pair : decodedQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator > 0 ? pair.substring(0, separator) : pair;
+            String value = separator > 0 ? pair.substring(separator + 1) : "";
+            if (mustEncode) {
+                key = percentEncode(key);
+                value = percentEncode(value);
+            }
+            parameters.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    private static String baseUri(URI uri) {
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        String authority = uri.getAuthority().toLowerCase(Locale.ROOT);
+        if (("http".equals(scheme) && uri.getPort() == 80) || ("https".equals(scheme) && uri.getPort() == 443)) {
+            authority = authority.substring(0, authority.lastIndexOf(':'));
+        }
+        String path = uri.getRawPath();
+        return scheme + "://" + authority + (path == null || path.isEmpty() ? "/" : path);
+    }
+
+    /**
+     * RFC 3986 percent-encoding as required by OAuth 1.0a.
+     */
+    static String percentEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+            .replace("+", "%20")
+            .replace("*", "%2A")
+            .replace("%7E", "~");
+    }
+
+    /**
+     * Encoded signature base string split around the body hash, nonce and timestamp.
+     */
+    private record Template(String[] fragments) {
+        String baseString(String bodyHash, String nonce, String timestamp) {
+            // Nonce and timestamp are alphanumeric and need no encoding; the base64 body hash does.
+            return fragments[0] + percentEncode(bodyHash)
+                + fragments[1] + nonce
+                + fragments[2] + timestamp
+                + fragments[3];
+        }
+    }
+}
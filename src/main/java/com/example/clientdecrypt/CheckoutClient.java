@@ -1,66 +1,235 @@
 package com.example.clientdecrypt;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.mastercard.developer.oauth.OAuth;
-import com.mastercard.developer.utils.AuthenticationUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 final class CheckoutClient {
     private final ObjectMapper mapper;
     private final HttpClient httpClient;
-    private final String baseUrl;
-    private final String consumerKey;
-    private final PrivateKey signingKey;
+    private final URI checkoutUri;
+    private final URI confirmationsUri;
+    private final Duration requestTimeout;
+    private final RequestSigner signer;
     private final String checkoutType;
     private final String srcDpaId;
     private final String organizationId;
+    private final String openApiClientId;
+    private final BatchMetrics metrics;
 
     CheckoutClient(ObjectMapper mapper, AppConfig config) throws Exception {
+        this(mapper, config, null, new BatchMetrics());
+    }
+
+    /**
+     * @param executor executor for the HTTP client's internal and async completion tasks,
+     *                 or {@code null} to use the client's default
+     * @param metrics  receives signing and round-trip latencies and the outcome of every attempt
+     */
+    CheckoutClient(ObjectMapper mapper, AppConfig config, Executor executor, BatchMetrics metrics) throws Exception {
+        this(mapper, config, executor, metrics, RequestSigner.from(config));
+    }
+
+    /**
+     * @param signer produces the OAuth {@code Authorization} header of every request
+     */
+    CheckoutClient(ObjectMapper mapper, AppConfig config, Executor executor, BatchMetrics metrics, RequestSigner signer) {
+        this(mapper, config, newHttpClient(config, executor), metrics, signer);
+    }
+
+    /**
+     * @param httpClient a client shared with other {@code CheckoutClient}s, e.g. one per tenant
+     */
+    CheckoutClient(ObjectMapper mapper, AppConfig config, HttpClient httpClient, BatchMetrics metrics, RequestSigner signer) {
         this.mapper = mapper;
-        this.httpClient = HttpClient.newHttpClient();
-        this.baseUrl = AppConfig.normalizeBaseUrl(config.baseUrl());
-        this.consumerKey = config.consumerKey();
-        this.signingKey = AuthenticationUtils.loadSigningKey(
-            config.signingKeyPath(),
-            config.signingKeyAlias(),
-            config.signingKeyPassword());
+        this.signer = signer;
+        this.metrics = metrics;
+        this.httpClient = httpClient;
+        this.checkoutUri = URI.create(AppConfig.normalizeBaseUrl(config.baseUrl()) + "/checkout");
+        this.confirmationsUri = URI.create(AppConfig.normalizeBaseUrl(config.baseUrl()) + "/checkout/confirmations");
+        this.openApiClientId = config.openApiClientId();
+        this.requestTimeout = Duration.ofMillis(config.requestTimeoutMillis());
         this.checkoutType = config.checkoutType();
         this.srcDpaId = config.srcDpaId();
         this.organizationId = config.organizationId();
     }
 
+    /**
+     * @param executor executor for the client's internal and async completion tasks, or {@code null}
+     *                 to use the client's default
+     */
+    static HttpClient newHttpClient(AppConfig config, Executor executor) {
+        // A single HTTP/2 client multiplexes concurrent requests over a small number of
+        // connections; it silently falls back to HTTP/1.1 if the server does not negotiate h2.
+        HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(config.connectTimeoutMillis()));
+        if (executor != null) {
+            httpClientBuilder.executor(executor);
+        }
+        return httpClientBuilder.build();
+    }
+
     String checkoutEncryptedPayload(String merchantTransactionId) throws IOException, InterruptedException {
-        URI uri = URI.create(baseUrl + "/checkout");
-        String payload = buildCheckoutPayload(merchantTransactionId);
-        String authHeader = OAuth.getAuthorizationHeader(
-            uri,
-            "POST",
-            payload,
-            StandardCharsets.UTF_8,
-            consumerKey,
-            signingKey);
-
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+        return checkoutEncryptedPayload(merchantTransactionId, null);
+    }
+
+    /**
+     * @param trace receives the attempt, its status code and correlationId, or {@code null}
+     */
+    String checkoutEncryptedPayload(String merchantTransactionId, RowTrace trace) throws IOException, InterruptedException {
+        HttpRequest request = buildRequest(merchantTransactionId);
+        long started = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException ex) {
+            metrics.recordResponse(BatchMetrics.outcome(ex));
+            throw ex;
+        } finally {
+            metrics.recordStage(BatchMetrics.Stage.HTTP, started);
+            if (trace != null) {
+                trace.attempted(started);
+            }
+        }
+        return extractEncryptedPayload(response, trace);
+    }
+
+    /**
+     * Non-blocking variant of {@link #checkoutEncryptedPayload(String)}. The returned future
+     * completes exceptionally with an {@link IOException} (possibly wrapped in a
+     * {@link java.util.concurrent.CompletionException}) on any failure.
+     */
+    CompletableFuture<String> checkoutEncryptedPayloadAsync(String merchantTransactionId) {
+        return checkoutEncryptedPayloadAsync(merchantTransactionId, null);
+    }
+
+    /**
+     * @param trace receives the attempt, its status code and correlationId, or {@code null}
+     */
+    CompletableFuture<String> checkoutEncryptedPayloadAsync(String merchantTransactionId, RowTrace trace) {
+        HttpRequest request;
+        try {
+            request = buildRequest(merchantTransactionId);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long started = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, ex) -> {
+                metrics.recordStage(BatchMetrics.Stage.HTTP, started);
+                if (trace != null) {
+                    trace.attempted(started);
+                }
+                if (ex != null) {
+                    metrics.recordResponse(BatchMetrics.outcome(ex));
+                }
+            })
+            .thenApply(response -> {
+                try {
+                    return extractEncryptedPayload(response, trace);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+    }
+
+    /**
+     * Sends a {@code PostbackConfirmationRequest} to {@code POST /checkout/confirmations} over the
+     * same connections as checkouts. The returned future completes with the 2xx status code, or
+     * exceptionally as {@link #checkoutEncryptedPayloadAsync(String)} does.
+     *
+     * @param confirmation the JSON request body
+     * @param trace        receives the attempt and its status code, or {@code null}
+     */
+    CompletableFuture<Integer> confirmAsync(String merchantTransactionId, byte[] confirmation, RowTrace trace) {
+        HttpRequest request;
+        try {
+            long signStarted = System.nanoTime();
+            String authHeader = signer.authorizationHeader(confirmationsUri, "POST", confirmation);
+            metrics.recordStage(BatchMetrics.Stage.SIGN, signStarted);
+            HttpRequest.Builder builder = HttpRequest.newBuilder(confirmationsUri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .header("Authorization", authHeader)
+                .header("X-Openapi-Clientid", openApiClientId);
+            if (merchantTransactionId != null) {
+                builder.header("merchant-transaction-id", merchantTransactionId);
+            }
+            request = builder.POST(HttpRequest.BodyPublishers.ofByteArray(confirmation)).build();
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long started = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, ex) -> {
+                metrics.recordStage(BatchMetrics.Stage.HTTP, started);
+                if (trace != null) {
+                    trace.attempted(started);
+                }
+                if (ex != null) {
+                    metrics.recordResponse(BatchMetrics.outcome(ex));
+                }
+            })
+            .thenApply(response -> {
+                metrics.recordResponse(Integer.toString(response.statusCode()));
+                if (trace != null) {
+                    trace.responded(response.statusCode());
+                }
+                if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                    throw new UncheckedIOException(new CheckoutException(
+                        response.statusCode(),
+                        response.body(),
+                        RetryPolicy.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null))));
+                }
+                return response.statusCode();
+            });
+    }
+
+    private HttpRequest buildRequest(String merchantTransactionId) throws IOException {
+        long started = System.nanoTime();
+        byte[] payload = buildCheckoutPayload(merchantTransactionId);
+        String authHeader = signer.authorizationHeader(checkoutUri, "POST", payload);
+        metrics.recordStage(BatchMetrics.Stage.SIGN, started);
+
+        return HttpRequest.newBuilder(checkoutUri)
+            .timeout(requestTimeout)
             .header("Accept", "application/json")
             .header("Content-Type", "application/json")
             .header("Authorization", authHeader)
-            .POST(HttpRequest.BodyPublishers.ofString(payload));
+            .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+            .build();
+    }
 
-        HttpResponse<String> response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofString());
+    private String extractEncryptedPayload(HttpResponse<String> response, RowTrace trace) throws IOException {
+        metrics.recordResponse(Integer.toString(response.statusCode()));
+        if (trace != null) {
+            trace.responded(response.statusCode());
+        }
         if (response.statusCode() < 200 || response.statusCode() >= 300) {
-            throw new IOException("Checkout request failed with status " + response.statusCode() + ": " + response.body());
+            throw new CheckoutException(
+                response.statusCode(),
+                response.body(),
+                RetryPolicy.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
         }
 
         JsonNode root = mapper.readTree(response.body());
+        if (trace != null) {
+            trace.correlationId(root.path("correlationId").textValue());
+        }
         JsonNode encryptedPayloadNode = root.path("encryptedPayload");
         if (encryptedPayloadNode.isTextual()) {
             return encryptedPayloadNode.asText();
@@ -68,10 +237,10 @@ final class CheckoutClient {
         if (encryptedPayloadNode.has("encryptedValue")) {
             return encryptedPayloadNode.path("encryptedValue").asText();
         }
-        throw new IOException("Encrypted payload missing or in unexpected format.");
+        throw JsonMappingException.from((JsonParser) null, "Encrypted payload missing or in unexpected format.");
     }
 
-    private String buildCheckoutPayload(String merchantTransactionId) throws IOException {
+    private byte[] buildCheckoutPayload(String merchantTransactionId) throws IOException {
         ObjectNode root = mapper.createObjectNode();
         if (srcDpaId != null) {
             root.put("srcDpaId", srcDpaId);
@@ -82,6 +251,6 @@ final class CheckoutClient {
         ObjectNode checkoutReference = root.putObject("checkoutReference");
         checkoutReference.put("type", "MERCHANT_TRANSACTION_ID");
         checkoutReference.putObject("data").put("merchantTransactionId", merchantTransactionId);
-        return mapper.writeValueAsString(root);
+        return mapper.writeValueAsBytes(root);
     }
 }
@@ -0,0 +1,32 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Non-2xx response from the Checkout API. Carries the status code and the server's
+ * {@code Retry-After} hint so callers can decide whether and when to retry.
+ */
+final class CheckoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    CheckoutException(int statusCode, String body, Duration retryAfter) {
+        super("Checkout request failed with status " + statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    int statusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the delay requested by the server, or {@code null} if none was sent
+     */
+    Duration retryAfter() {
+        return retryAfter;
+    }
+}
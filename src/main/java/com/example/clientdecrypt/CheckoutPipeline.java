@@ -0,0 +1,300 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs checkout + decrypt for every input row and writes output rows in input order.
+ * With a concurrency above one, rows are fetched through the non-blocking HTTP client and
+ * decrypted on virtual threads while at most {@code concurrency} rows are queued for output;
+ * the number of concurrent checkout calls is further bounded by the adaptive limit. The
+ * calling thread acts as the ordered writer. Rows whose merchantTransactionId is already in
+ * flight or cached share that result through the {@link ResultCoalescer}. Every written row is
+ * also handed to the run's {@link AuditLog} with its {@link RowTrace}.
+ *
+ * <p>For a multi-tenant config each row is checked out and decrypted with the {@link Tenants}
+ * entry its {@code tenant} column names, and coalesced only with rows of the same tenant. Up to
+ * {@value #MULTI_TENANT_WINDOW} times {@code concurrency} rows are then queued for output, so the
+ * {@link FairScheduler} has calls of several tenants waiting to choose from even while the
+ * adaptive limit is at its maximum.
+ */
+final class CheckoutPipeline {
+    static final int MULTI_TENANT_WINDOW = 4;
+
+    private final Tenants tenants;
+    private final int concurrency;
+    private final int window;
+    private final BatchMetrics metrics;
+    private final ResultCoalescer coalescer;
+
+    CheckoutPipeline(
+        RetryingCheckout checkout,
+        PayloadDecryptor decryptor,
+        int concurrency,
+        BatchMetrics metrics,
+        ResultCoalescer coalescer
+    ) {
+        this(Tenants.single(checkout, decryptor), concurrency, metrics, coalescer);
+    }
+
+    CheckoutPipeline(Tenants tenants, int concurrency, BatchMetrics metrics, ResultCoalescer coalescer) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1.");
+        }
+        this.tenants = tenants;
+        this.concurrency = concurrency;
+        this.window = tenants.multiTenant() ? MULTI_TENANT_WINDOW * concurrency : concurrency;
+        this.metrics = metrics;
+        this.coalescer = coalescer;
+    }
+
+    void run(InputRows rows, OutputSink sink, CheckpointJournal journal) throws IOException, InterruptedException {
+        run(rows, sink, journal, AuditLog.none());
+    }
+
+    void run(InputRows rows, OutputSink sink, CheckpointJournal journal, AuditLog audit) throws IOException, InterruptedException {
+        journal.skipCompleted(rows);
+
+        if (concurrency == 1) {
+            while (rows.next()) {
+                write(sink, journal, audit, process(rows.cardNumber(), rows.merchantTransactionId(), rows.tenant()));
+            }
+            journal.finish();
+            return;
+        }
+
+        Deque<CompletableFuture<Processed>> inFlight = new ArrayDeque<>(window);
+        try (ExecutorService decryptExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (rows.next()) {
+                if (inFlight.size() >= window) {
+                    write(sink, journal, audit, await(inFlight.removeFirst()));
+                }
+                inFlight.addLast(processAsync(rows.cardNumber(), rows.merchantTransactionId(), rows.tenant(), decryptExecutor));
+            }
+            while (!inFlight.isEmpty()) {
+                write(sink, journal, audit, await(inFlight.removeFirst()));
+            }
+            journal.finish();
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void write(OutputSink sink, CheckpointJournal journal, AuditLog audit, Processed processed) throws IOException {
+        long started = System.nanoTime();
+        sink.write(processed.row());
+        journal.rowWritten((String) processed.row()[1]);
+        audit.record(processed.trace());
+        metrics.recordStage(BatchMetrics.Stage.WRITE, started);
+    }
+
+    private Processed process(String cardNumber, String merchantTransactionId, String tenantName) {
+        RowTrace trace = new RowTrace(merchantTransactionId);
+        if (merchantTransactionId == null || merchantTransactionId.isBlank()) {
+            return missingId(cardNumber, merchantTransactionId, trace);
+        }
+        Tenants.Tenant tenant = tenants.resolve(tenantName);
+        if (tenant == null) {
+            return unknownTenant(cardNumber, merchantTransactionId, tenantName, trace);
+        }
+
+        long started = System.nanoTime();
+        try {
+            ResultCoalescer.Lookup lookup = coalescer.lookup(
+                coalescingKey(tenant, merchantTransactionId),
+                () -> fetch(tenant, merchantTransactionId, trace));
+            if (lookup.shared()) {
+                metrics.rowDeduplicated();
+                trace.shared();
+            }
+            Object[] row = DecryptedRows.of(cardNumber, merchantTransactionId, lookup.result().join());
+            metrics.rowSucceeded();
+            return new Processed(row, trace);
+        } catch (Exception ex) {
+            return failed(cardNumber, merchantTransactionId, trace, ex);
+        } finally {
+            metrics.recordStage(BatchMetrics.Stage.ROW, started);
+            trace.finished(started);
+        }
+    }
+
+    private Processed missingId(String cardNumber, String merchantTransactionId, RowTrace trace) {
+        System.err.println("Skipping row with missing merchantTransactionId.");
+        metrics.rowFailed();
+        trace.failed(ErrorCategory.MISSING_ID, "Missing merchantTransactionId.");
+        return new Processed(DecryptedRows.blank(cardNumber, merchantTransactionId), trace);
+    }
+
+    private Processed unknownTenant(String cardNumber, String merchantTransactionId, String tenantName, RowTrace trace) {
+        String error = tenantName == null || tenantName.isBlank() ? "Missing tenant." : "Unknown tenant " + tenantName + ".";
+        System.err.println("Skipping transaction " + merchantTransactionId + ": " + error);
+        metrics.rowFailed();
+        trace.failed(ErrorCategory.UNKNOWN_TENANT, error);
+        return new Processed(DecryptedRows.blank(cardNumber, merchantTransactionId), trace);
+    }
+
+    /**
+     * The same merchantTransactionId of two merchants is two different checkouts.
+     */
+    private String coalescingKey(Tenants.Tenant tenant, String merchantTransactionId) {
+        return tenants.multiTenant() ? tenant.name() + ':' + merchantTransactionId : merchantTransactionId;
+    }
+
+    private Processed failed(String cardNumber, String merchantTransactionId, RowTrace trace, Throwable ex) {
+        Throwable cause = rootCause(ex);
+        System.err.println("Failed to process transaction " + merchantTransactionId + ": " + cause.getMessage());
+        metrics.rowFailed();
+        trace.failed(cause);
+        return new Processed(DecryptedRows.blank(cardNumber, merchantTransactionId), trace);
+    }
+
+    /**
+     * Blocking checkout + decrypt on the calling thread, as a future for the coalescer.
+     */
+    private CompletableFuture<PayloadDecryptor.DecryptedResult> fetch(Tenants.Tenant tenant, String merchantTransactionId, RowTrace trace) {
+        try {
+            tenants.acquire(tenant).get();
+            String encryptedPayload;
+            try {
+                encryptedPayload = tenant.checkout().checkoutEncryptedPayload(merchantTransactionId, trace);
+            } finally {
+                tenants.release(tenant);
+            }
+            return CompletableFuture.completedFuture(decrypt(tenant.decryptor(), encryptedPayload, trace));
+        } catch (ExecutionException ex) {
+            return CompletableFuture.failedFuture(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(ex);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private PayloadDecryptor.DecryptedResult decrypt(PayloadDecryptor decryptor, String encryptedPayload, RowTrace trace)
+        throws IOException {
+        long started = System.nanoTime();
+        try {
+            return decryptor.decrypt(encryptedPayload);
+        } catch (IOException ex) {
+            throw new DecryptionFailure(ex);
+        } finally {
+            metrics.recordStage(BatchMetrics.Stage.DECRYPT, started);
+            trace.decrypted(started);
+        }
+    }
+
+    /**
+     * Fetches over the non-blocking HTTP transport and decrypts on {@code decryptExecutor}.
+     * The returned future never completes exceptionally; failures yield a blank record.
+     */
+    private CompletableFuture<Processed> processAsync(
+        String cardNumber,
+        String merchantTransactionId,
+        String tenantName,
+        Executor decryptExecutor
+    ) {
+        RowTrace trace = new RowTrace(merchantTransactionId);
+        if (merchantTransactionId == null || merchantTransactionId.isBlank()) {
+            return CompletableFuture.completedFuture(missingId(cardNumber, merchantTransactionId, trace));
+        }
+        Tenants.Tenant tenant = tenants.resolve(tenantName);
+        if (tenant == null) {
+            return CompletableFuture.completedFuture(unknownTenant(cardNumber, merchantTransactionId, tenantName, trace));
+        }
+
+        long started = System.nanoTime();
+        ResultCoalescer.Lookup lookup = coalescer.lookup(
+            coalescingKey(tenant, merchantTransactionId),
+            () -> fetchAsync(tenant, merchantTransactionId, trace, decryptExecutor));
+        if (lookup.shared()) {
+            metrics.rowDeduplicated();
+            trace.shared();
+        }
+        return lookup.result()
+            .thenApply(decrypted -> {
+                Object[] row = DecryptedRows.of(cardNumber, merchantTransactionId, decrypted);
+                metrics.rowSucceeded();
+                return new Processed(row, trace);
+            })
+            .exceptionally(ex -> failed(cardNumber, merchantTransactionId, trace, ex))
+            .whenComplete((processed, ex) -> {
+                metrics.recordStage(BatchMetrics.Stage.ROW, started);
+                trace.finished(started);
+            });
+    }
+
+    private CompletableFuture<PayloadDecryptor.DecryptedResult> fetchAsync(
+        Tenants.Tenant tenant,
+        String merchantTransactionId,
+        RowTrace trace,
+        Executor decryptExecutor
+    ) {
+        return tenants.acquire(tenant)
+            .thenCompose(admitted -> checkoutAdmitted(tenant, merchantTransactionId, trace))
+            .thenApplyAsync(encryptedPayload -> {
+                try {
+                    return decrypt(tenant.decryptor(), encryptedPayload, trace);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, decryptExecutor);
+    }
+
+    /**
+     * Starts the checkout of a call holding a permit and releases the permit when it ends, also
+     * when signing or building the request throws before there is a future to attach to.
+     */
+    private CompletableFuture<String> checkoutAdmitted(Tenants.Tenant tenant, String merchantTransactionId, RowTrace trace) {
+        CompletableFuture<String> response;
+        try {
+            response = tenant.checkout().checkoutEncryptedPayloadAsync(merchantTransactionId, trace);
+        } catch (RuntimeException ex) {
+            tenants.release(tenant);
+            return CompletableFuture.failedFuture(ex);
+        }
+        return response.whenComplete((encryptedPayload, ex) -> tenants.release(tenant));
+    }
+
+    private static Throwable rootCause(Throwable ex) {
+        Throwable current = ex;
+        while ((current instanceof CompletionException || current instanceof UncheckedIOException)
+            && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    private static Processed await(Future<Processed> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Row processing failed unexpectedly", ex.getCause());
+        }
+    }
+
+    static String value(CSVRecord record, String header) {
+        if (!record.isMapped(header)) {
+            return null;
+        }
+        String value = record.get(header);
+        if (value == null) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    private record Processed(Object[] row, RowTrace trace) {
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.clientdecrypt;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Append-only progress journal for a batch run. Every {@code checkpointEvery} output rows the
+ * output is flushed and fsync'd, then one line {@code row<TAB>outputBytes<TAB>merchantTransactionId}
+ * is appended and fsync'd. Because rows are written in input order, the last line is enough to
+ * resume: skip that many input rows and truncate the output back to {@code outputBytes}.
+ */
+final class CheckpointJournal implements Closeable {
+    static final Checkpoint START = new Checkpoint(0, 0, "");
+
+    private final FileChannel journalChannel;
+    private final FileChannel outputChannel;
+    private final Flushable outputWriter;
+    private final Checkpoint resumeFrom;
+    private final int checkpointEvery;
+    private long row;
+    private String lastMerchantTransactionId;
+    private int sinceCheckpoint;
+
+    private CheckpointJournal(
+        FileChannel journalChannel,
+        FileChannel outputChannel,
+        Flushable outputWriter,
+        Checkpoint resumeFrom,
+        int checkpointEvery
+    ) {
+        this.journalChannel = journalChannel;
+        this.outputChannel = outputChannel;
+        this.outputWriter = outputWriter;
+        this.resumeFrom = resumeFrom;
+        this.checkpointEvery = checkpointEvery;
+        this.row = resumeFrom.row();
+        this.lastMerchantTransactionId = resumeFrom.merchantTransactionId();
+    }
+
+    /**
+     * @param resumeFrom checkpoint to continue from, or {@link #START} to begin a new journal
+     */
+    static CheckpointJournal open(
+        Path journalPath,
+        FileChannel outputChannel,
+        Flushable outputWriter,
+        Checkpoint resumeFrom,
+        int checkpointEvery
+    ) throws IOException {
+        if (checkpointEvery < 1) {
+            throw new IllegalArgumentException("checkpointEvery must be at least 1.");
+        }
+        FileChannel journalChannel = resumeFrom == START
+            ? FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+            : FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new CheckpointJournal(journalChannel, outputChannel, outputWriter, resumeFrom, checkpointEvery);
+    }
+
+    /**
+     * A journal for outputs that cannot be truncated and resumed (stdout, gzip): it records
+     * nothing and only flushes the output every {@code checkpointEvery} rows so downstream
+     * readers see steady progress.
+     */
+    static CheckpointJournal flushOnly(Flushable outputWriter, int checkpointEvery) {
+        if (checkpointEvery < 1) {
+            throw new IllegalArgumentException("checkpointEvery must be at least 1.");
+        }
+        return new CheckpointJournal(null, null, outputWriter, START, checkpointEvery);
+    }
+
+    static Path journalPathFor(Path output) {
+        return output.resolveSibling(output.getFileName() + ".journal");
+    }
+
+    /**
+     * Reads the last complete checkpoint. A torn final line from a crash is ignored.
+     *
+     * @return the last checkpoint, or {@link #START} if the journal is missing or empty
+     */
+    static Checkpoint readLast(Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return START;
+        }
+        List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String[] parts = lines.get(i).split("\t", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            try {
+                return new Checkpoint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (NumberFormatException ignored) {
+                // Torn or foreign line; keep looking backwards.
+            }
+        }
+        return START;
+    }
+
+    /**
+     * Advances {@code rows} past the rows already covered by the resume checkpoint and
+     * verifies that the last skipped row still carries the journaled merchantTransactionId.
+     */
+    void skipCompleted(InputRows rows) throws IOException {
+        String merchantTransactionId = null;
+        for (long skipped = 0; skipped < resumeFrom.row(); skipped++) {
+            if (!rows.next()) {
+                throw new IOException("Input has fewer rows than the checkpoint journal (" + resumeFrom.row() + ").");
+            }
+            merchantTransactionId = rows.merchantTransactionId();
+        }
+        if (resumeFrom.row() > 0 && !Objects.equals(DecryptedRows.nullToEmpty(merchantTransactionId), resumeFrom.merchantTransactionId())) {
+            throw new IOException("Input row " + resumeFrom.row() + " does not match the checkpoint journal; refusing to resume.");
+        }
+    }
+
+    void rowWritten(String merchantTransactionId) throws IOException {
+        row++;
+        lastMerchantTransactionId = DecryptedRows.nullToEmpty(merchantTransactionId);
+        if (++sinceCheckpoint >= checkpointEvery) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Records a final checkpoint after the last row has been written.
+     */
+    void finish() throws IOException {
+        if (sinceCheckpoint > 0) {
+            checkpoint();
+        }
+    }
+
+    private void checkpoint() throws IOException {
+        outputWriter.flush();
+        sinceCheckpoint = 0;
+        if (journalChannel == null) {
+            return;
+        }
+        outputChannel.force(false);
+        String line = row + "\t" + outputChannel.size() + "\t" + lastMerchantTransactionId + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journalChannel.write(buffer);
+        }
+        journalChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journalChannel != null) {
+            journalChannel.close();
+        }
+    }
+
+    record Checkpoint(long row, long outputBytes, String merchantTransactionId) {
+    }
+}
@@ -3,28 +3,130 @@ package com.example.clientdecrypt;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import picocli.CommandLine;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.Writer;
+import java.net.http.HttpClient;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 @CommandLine.Command(name = "client-decrypt", mixinStandardHelpOptions = true, description = "Fetch and decrypt Click to Pay checkout payloads.")
 public final class ClientDecryptApp implements Callable<Integer> {
-    @CommandLine.Option(names = "--input", required = true, description = "Input CSV file with cardNumber and merchantTransactionId columns.")
-    private Path inputCsv;
+    private static final CSVFormat INPUT_FORMAT = CSVFormat.DEFAULT.builder()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setTrim(true)
+        .build();
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 
-    @CommandLine.Option(names = "--output", required = true, description = "Output CSV file path.")
-    private Path outputCsv;
+    // merchantTransactionIds to process with --retry-failed, otherwise null.
+    private Set<String> retryIds;
+
+    @CommandLine.Option(
+        names = "--input",
+        required = true,
+        description = "Input CSV with cardNumber and merchantTransactionId columns, and a tenant column for a multi-tenant "
+            + "config: a file (.gz is decompressed), - for stdin, or a directory or glob such as 'drops/*.csv.gz' to process many files."
+    )
+    private String input;
+
+    @CommandLine.Option(
+        names = "--output",
+        required = true,
+        description = "Output file (.gz is compressed), - for stdout, or a directory when --input names several files."
+    )
+    private String output;
+
+    @CommandLine.Option(
+        names = "--output-format",
+        description = "csv, jsonl or arrow (Arrow IPC stream); by default inferred from the --output extension "
+            + "(.jsonl/.ndjson, .arrow/.arrows, otherwise csv)."
+    )
+    private String outputFormat;
 
     @CommandLine.Option(names = "--config", required = true, description = "Properties file with API, OAuth, and encryption settings.")
     private Path configPath;
 
+    @CommandLine.Option(
+        names = "--default-tenant",
+        description = "Tenant of rows with an empty or missing tenant column, for a config that lists tenants."
+    )
+    private String defaultTenant;
+
+    @CommandLine.Option(
+        names = "--concurrency",
+        defaultValue = "1",
+        description = "Maximum number of rows fetched and decrypted in parallel (default: ${DEFAULT-VALUE}). Output order always matches input order. "
+            + "With tenants, up to 4x as many rows are read ahead so the fair scheduler can pick between them."
+    )
+    private int concurrency;
+
+    @CommandLine.Option(
+        names = "--parallel-files",
+        defaultValue = "4",
+        description = "Input files processed at once in directory/glob mode (default: ${DEFAULT-VALUE})."
+    )
+    private int parallelFiles;
+
+    @CommandLine.Option(
+        names = "--resume",
+        description = "Continue an interrupted run from its checkpoint journal, appending to the existing output."
+    )
+    private boolean resume;
+
+    @CommandLine.Option(
+        names = "--checkpoint-every",
+        defaultValue = "1000",
+        description = "Rows between fsync'd checkpoints in <output>.journal (default: ${DEFAULT-VALUE})."
+    )
+    private int checkpointEvery;
+
+    @CommandLine.Option(
+        names = "--audit-log",
+        description = "Log every row's outcome, error category, HTTP status, correlationId and stage timings as JSON lines "
+            + "to <output>.audit.jsonl."
+    )
+    private boolean auditLog;
+
+    @CommandLine.Option(
+        names = "--retry-failed",
+        paramLabel = "<auditLog>",
+        description = "Only process the rows whose merchantTransactionId failed with a retryable error (timeout, connection, "
+            + "throttling, 5xx) and never succeeded in this audit log of an earlier run. Can be repeated."
+    )
+    private List<Path> retryFailed = new ArrayList<>();
+
+    @CommandLine.Option(
+        names = "--progress-interval",
+        defaultValue = "10",
+        description = "Seconds between progress lines on stderr; 0 disables them (default: ${DEFAULT-VALUE})."
+    )
+    private int progressIntervalSeconds;
+
+    @CommandLine.Option(
+        names = "--metrics-port",
+        defaultValue = "0",
+        description = "Serve live metrics on localhost at /metrics (Prometheus) and /metrics.json; 0 disables (default: ${DEFAULT-VALUE})."
+    )
+    private int metricsPort;
+
     public static void main(String[] args) {
         int exitCode = new CommandLine(new ClientDecryptApp()).execute(args);
         System.exit(exitCode);
@@ -32,96 +134,274 @@ public final class ClientDecryptApp implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
+        if (parallelFiles < 1) {
+            throw new IllegalArgumentException("--parallel-files must be at least 1.");
+        }
+        List<Path> inputs = multiFileInputs(input);
+        // In directory mode the output is a directory, so only an explicit format applies.
+        String format = OutputSink.format(outputFormat, inputs == null ? output : "");
+        if (inputs == null && resume && (CsvStreams.isStdio(output) || CsvStreams.isGzip(output))) {
+            throw new IllegalArgumentException("--resume needs an uncompressed output file, not stdout or .gz.");
+        }
+        if (inputs == null && auditLog && CsvStreams.isStdio(output)) {
+            throw new IllegalArgumentException("--audit-log needs an output file, not stdout.");
+        }
+
         ObjectMapper mapper = new ObjectMapper();
-        AppConfig config = AppConfig.load(configPath);
-        CheckoutClient checkoutClient = new CheckoutClient(mapper, config);
-        PayloadDecryptor decryptor = new PayloadDecryptor(mapper, config);
-
-        CSVFormat inputFormat = CSVFormat.DEFAULT.builder()
-            .setHeader()
-            .setSkipHeaderRecord(true)
-            .setTrim(true)
-            .build();
-        CSVFormat outputFormat = CSVFormat.DEFAULT.builder()
-            .setHeader(
-                "cardNumber",
-                "merchantTransactionId",
-                "cardPrimaryAccountNumber",
-                "cardPanExpirationMonth",
-                "cardPanExpirationYear",
-                "cardholderFullName",
-                "tokenPaymentToken",
-                "tokenExpirationMonth",
-                "tokenExpirationYear",
-                "tokenPaymentAccountReference",
-                "dynamicDataType",
-                "dynamicDataValue",
-                "dynamicDataExpiration"
-            )
-            .build();
-
-        try (Reader reader = Files.newBufferedReader(inputCsv);
-             CSVParser parser = new CSVParser(reader, inputFormat);
-             Writer writer = Files.newBufferedWriter(outputCsv);
-             CSVPrinter printer = new CSVPrinter(writer, outputFormat)) {
-
-            for (CSVRecord record : parser) {
-                String cardNumber = value(record, "cardNumber");
-                String merchantTransactionId = value(record, "merchantTransactionId");
-                if (merchantTransactionId == null || merchantTransactionId.isBlank()) {
-                    printer.printRecord(blankRecord(cardNumber, merchantTransactionId));
-                    System.err.println("Skipping row with missing merchantTransactionId.");
-                    continue;
+        if (!retryFailed.isEmpty()) {
+            retryIds = retryableFailures(mapper, inputs, format);
+        }
+        Map<String, AppConfig> tenantConfigs = AppConfig.loadTenants(configPath);
+        if (tenantConfigs.isEmpty() && defaultTenant != null) {
+            throw new IllegalArgumentException("--default-tenant needs a config that lists tenants.");
+        }
+        // The HTTP client and result cache are shared by all tenants and configured by the first one.
+        AppConfig config = tenantConfigs.isEmpty() ? AppConfig.load(configPath) : tenantConfigs.values().iterator().next();
+        ExecutorService httpExecutor = config.httpClientThreads() > 0
+            ? Executors.newFixedThreadPool(config.httpClientThreads())
+            : null;
+        BatchMetrics metrics = new BatchMetrics();
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(concurrency);
+        Tenants tenants;
+        if (tenantConfigs.isEmpty()) {
+            tenants = Tenants.single(
+                checkout(new CheckoutClient(mapper, config, httpExecutor, metrics), config, limit, metrics),
+                new PayloadDecryptor(mapper, config));
+        } else {
+            HttpClient httpClient = CheckoutClient.newHttpClient(config, httpExecutor);
+            List<Tenants.Tenant> entries = new ArrayList<>();
+            for (AppConfig tenantConfig : tenantConfigs.values()) {
+                CheckoutClient client = new CheckoutClient(mapper, tenantConfig, httpClient, metrics, RequestSigner.from(tenantConfig));
+                entries.add(new Tenants.Tenant(
+                    tenantConfig.tenant(),
+                    checkout(client, tenantConfig, limit, metrics),
+                    new PayloadDecryptor(mapper, tenantConfig)));
+            }
+            tenants = Tenants.of(entries, tenantConfigs, defaultTenant, limit);
+        }
+        // One pipeline for all files, sharing the HTTP client, keys, rate limiters, adaptive limit and result cache.
+        CheckoutPipeline pipeline = new CheckoutPipeline(tenants, concurrency, metrics, ResultCoalescer.from(config));
+
+        MetricsReporter reporter = MetricsReporter.start(metrics, mapper, progressIntervalSeconds, metricsPort);
+        try {
+            int exitCode = inputs == null
+                ? processOne(pipeline, input, output, format)
+                : processAll(pipeline, inputs, Path.of(output), format);
+            System.err.print(metrics.summary());
+            System.err.print(tenants.summary());
+            return exitCode;
+        } finally {
+            reporter.close();
+            if (httpExecutor != null) {
+                httpExecutor.shutdown();
+            }
+        }
+    }
+
+    private static RetryingCheckout checkout(
+        CheckoutClient client,
+        AppConfig config,
+        AdaptiveConcurrencyLimit limit,
+        BatchMetrics metrics
+    ) {
+        return new RetryingCheckout(
+            client,
+            RateLimiter.of(config.rateLimitPerSecond(), config.rateLimitBurst()),
+            RetryPolicy.from(config),
+            HedgePolicy.from(config),
+            limit,
+            metrics);
+    }
+
+    private int processOne(CheckoutPipeline pipeline, String inputLocation, String outputLocation, String format)
+        throws IOException, InterruptedException {
+        if (CsvStreams.isStdio(outputLocation) || CsvStreams.isGzip(outputLocation)) {
+            try (InputRows rows = openInput(inputLocation);
+                 OutputSink sink = OutputSink.open(format, CsvStreams.openOutputStream(outputLocation), false);
+                 CheckpointJournal journal = CheckpointJournal.flushOnly(sink, checkpointEvery);
+                 AuditLog audit = auditLog ? AuditLog.open(AuditLog.auditLogPathFor(Path.of(outputLocation)), 0) : AuditLog.none()) {
+                pipeline.run(rows, sink, journal, audit);
+            }
+            return 0;
+        }
+
+        Path outputCsv = Path.of(outputLocation);
+        Path journalPath = CheckpointJournal.journalPathFor(outputCsv);
+        CheckpointJournal.Checkpoint resumeFrom = resume
+            ? CheckpointJournal.readLast(journalPath)
+            : CheckpointJournal.START;
+
+        try (InputRows rows = openInput(inputLocation);
+             FileChannel outputChannel = openOutput(outputCsv, resumeFrom);
+             OutputSink sink = OutputSink.open(
+                 format,
+                 new BufferedOutputStream(Channels.newOutputStream(outputChannel), OUTPUT_BUFFER_SIZE),
+                 resumeFrom.outputBytes() > 0);
+             CheckpointJournal journal = CheckpointJournal.open(journalPath, outputChannel, sink, resumeFrom, checkpointEvery);
+             AuditLog audit = auditLog ? AuditLog.open(AuditLog.auditLogPathFor(outputCsv), resumeFrom.row()) : AuditLog.none()) {
+
+            if (resumeFrom.row() > 0) {
+                System.err.println("Resuming " + inputLocation + " after row " + resumeFrom.row()
+                    + " (" + resumeFrom.merchantTransactionId() + ").");
+            }
+            pipeline.run(rows, sink, journal, audit);
+        }
+        return 0;
+    }
+
+    /**
+     * Opens plain input files with the memory-mapped {@link MappedCsvReader}; stdin and gzip
+     * inputs, which cannot be mapped, go through commons-csv. With {@code --retry-failed} only
+     * the rows to retry are returned.
+     */
+    private InputRows openInput(String location) throws IOException {
+        InputRows rows;
+        if (!CsvStreams.isStdio(location) && !CsvStreams.isGzip(location)) {
+            rows = MappedCsvReader.open(Path.of(location));
+        } else {
+            Reader reader = CsvStreams.openReader(location);
+            try {
+                rows = InputRows.of(new CSVParser(reader, INPUT_FORMAT));
+            } catch (IOException | RuntimeException ex) {
+                reader.close();
+                throw ex;
+            }
+        }
+        return retryIds == null ? rows : InputRows.selecting(rows, retryIds);
+    }
+
+    /**
+     * Reads the {@code --retry-failed} audit logs, refusing one that this run would overwrite
+     * together with the output it describes.
+     */
+    private Set<String> retryableFailures(ObjectMapper mapper, List<Path> inputs, String format) throws IOException {
+        List<Path> outputs = inputs == null
+            ? List.of(Path.of(output))
+            : inputs.stream().map(inputFile -> Path.of(output).resolve(outputName(inputFile, format))).toList();
+        for (Path log : retryFailed) {
+            for (Path outputFile : outputs) {
+                if (AuditLog.auditLogPathFor(outputFile).toAbsolutePath().normalize().equals(log.toAbsolutePath().normalize())) {
+                    throw new IllegalArgumentException("--retry-failed " + log + " belongs to --output " + outputFile
+                        + "; write the retry run to a different output.");
                 }
+            }
+        }
+        Set<String> merchantTransactionIds = AuditLog.retryableFailures(mapper, retryFailed);
+        System.err.println("Retrying " + merchantTransactionIds.size() + " merchantTransactionIds with retryable failures.");
+        return merchantTransactionIds;
+    }
+
+    /**
+     * Processes every input on {@code parallelFiles} threads, writing each to the output directory
+     * under the same file name ({@code .csv} replaced by the output format's extension). A failed
+     * file is reported and does not stop the others.
+     *
+     * @return 0 if every file succeeded, otherwise 1
+     */
+    private int processAll(CheckoutPipeline pipeline, List<Path> inputs, Path outputDirectory, String format)
+        throws IOException, InterruptedException {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input files match " + input + ".");
+        }
+        for (Path inputFile : inputs) {
+            Path outputFile = outputDirectory.resolve(outputName(inputFile, format));
+            if (outputFile.toAbsolutePath().normalize().equals(inputFile.toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("--output directory must differ from the input directory.");
+            }
+            if (resume && CsvStreams.isGzip(outputFile.toString())) {
+                throw new IllegalArgumentException("--resume needs uncompressed outputs, but " + inputFile.getFileName()
+                    + " would be written to " + outputFile.getFileName() + ".");
+            }
+        }
+        Files.createDirectories(outputDirectory);
+        System.err.println("Processing " + inputs.size() + " files, " + parallelFiles + " at a time.");
 
+        List<Future<Integer>> results = new ArrayList<>(inputs.size());
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(Math.min(parallelFiles, inputs.size()));
+        try {
+            for (Path inputFile : inputs) {
+                Path outputFile = outputDirectory.resolve(outputName(inputFile, format));
+                results.add(fileExecutor.submit(() -> processOne(pipeline, inputFile.toString(), outputFile.toString(), format)));
+            }
+            int failed = 0;
+            for (int i = 0; i < inputs.size(); i++) {
                 try {
-                    String encryptedPayload = checkoutClient.checkoutEncryptedPayload(merchantTransactionId);
-                    PayloadDecryptor.DecryptedResult decrypted = decryptor.decrypt(encryptedPayload);
-                    printer.printRecord(
-                        nullToEmpty(cardNumber),
-                        nullToEmpty(merchantTransactionId),
-                        nullToEmpty(decrypted.cardPrimaryAccountNumber()),
-                        nullToEmpty(decrypted.cardPanExpirationMonth()),
-                        nullToEmpty(decrypted.cardPanExpirationYear()),
-                        nullToEmpty(decrypted.cardholderFullName()),
-                        nullToEmpty(decrypted.tokenPaymentToken()),
-                        nullToEmpty(decrypted.tokenExpirationMonth()),
-                        nullToEmpty(decrypted.tokenExpirationYear()),
-                        nullToEmpty(decrypted.tokenPaymentAccountReference()),
-                        nullToEmpty(decrypted.dynamicDataType()),
-                        nullToEmpty(decrypted.dynamicDataValue()),
-                        nullToEmpty(decrypted.dynamicDataExpiration())
-                    );
-                } catch (Exception ex) {
-                    printer.printRecord(blankRecord(cardNumber, merchantTransactionId));
-                    System.err.println("Failed to process transaction " + merchantTransactionId + ": " + ex.getMessage());
+                    results.get(i).get();
+                } catch (ExecutionException ex) {
+                    failed++;
+                    System.err.println("Failed to process " + inputs.get(i) + ": " + ex.getCause().getMessage());
                 }
             }
+            if (failed > 0) {
+                System.err.println(failed + " of " + inputs.size() + " files failed.");
+            }
+            return failed == 0 ? 0 : 1;
+        } finally {
+            fileExecutor.shutdownNow();
         }
+    }
 
-        return 0;
+    /**
+     * @return the output file name for {@code inputFile}: {@code in.csv.gz} becomes {@code in.jsonl.gz} for JSONL
+     */
+    private static String outputName(Path inputFile, String format) {
+        String name = inputFile.getFileName().toString();
+        if (OutputSink.CSV.equals(format)) {
+            return name;
+        }
+        String extension = "." + OutputSink.extension(format);
+        String renamed = name.replaceFirst("(?i)\\.csv(?=(\\.gz)?$)", extension);
+        return renamed.equals(name) ? name + extension : renamed;
     }
 
-    private static String value(CSVRecord record, String header) {
-        if (!record.isMapped(header)) {
+    /**
+     * @return the input files when {@code location} is a directory (its {@code .csv} and
+     *         {@code .csv.gz} files) or a glob over file names, sorted; {@code null} for a single input
+     */
+    private static List<Path> multiFileInputs(String location) throws IOException {
+        if (CsvStreams.isStdio(location)) {
             return null;
         }
-        String value = record.get(header);
-        if (value == null) {
+        Path directory;
+        PathMatcher matcher;
+        if (location.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) {
+            Path pattern = Path.of(location);
+            directory = pattern.getParent() != null ? pattern.getParent() : Path.of(".");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.getFileName());
+        } else if (Files.isDirectory(Path.of(location))) {
+            directory = Path.of(location);
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.{csv,csv.gz}");
+        } else {
             return null;
         }
-        return value.trim();
-    }
-
-    private static String nullToEmpty(String value) {
-        return value == null ? "" : value;
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(file -> matcher.matches(file.getFileName()))
+                .sorted()
+                .toList();
+        }
     }
 
-    private static Object[] blankRecord(String cardNumber, String merchantTransactionId) {
-        return new Object[] {
-            nullToEmpty(cardNumber),
-            nullToEmpty(merchantTransactionId),
-            "", "", "", "", "", "", "", "", "", "", ""
-        };
+    /**
+     * Opens the output for writing. When resuming, anything written after the last checkpoint
+     * is discarded so the rows that follow are not duplicated.
+     */
+    private static FileChannel openOutput(Path outputCsv, CheckpointJournal.Checkpoint resumeFrom) throws IOException {
+        if (resumeFrom.outputBytes() == 0) {
+            return FileChannel.open(outputCsv, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        FileChannel channel = FileChannel.open(outputCsv, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < resumeFrom.outputBytes()) {
+                throw new IOException("Output " + outputCsv + " is shorter than its checkpoint journal; cannot resume.");
+            }
+            channel.truncate(resumeFrom.outputBytes());
+            channel.position(resumeFrom.outputBytes());
+            return channel;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
     }
 }
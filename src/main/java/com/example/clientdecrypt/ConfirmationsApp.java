@@ -0,0 +1,256 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CommandLine.Command(
+    name = "confirmations",
+    mixinStandardHelpOptions = true,
+    description = "Submit payment outcomes to POST /checkout/confirmations and write one status row per input row."
+)
+public final class ConfirmationsApp implements Callable<Integer> {
+    private static final CSVFormat INPUT_FORMAT = CSVFormat.DEFAULT.builder()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setTrim(true)
+        .build();
+    private static final String[] STATUS_HEADER = {
+        "merchantTransactionId", "correlationId", "outcome", "httpStatus", "attempts", "millis", "error"};
+    // Input columns copied into confirmationData under the same name.
+    private static final String[] CONFIRMATION_FIELDS = {
+        "checkoutEventType", "checkoutEventStatus", "confirmationStatus", "confirmationReason", "confirmationTimestamp",
+        "networkAuthorizationCode", "networkTransactionIdentifier", "paymentNetworkReference"};
+
+    @CommandLine.Option(
+        names = "--input",
+        required = true,
+        description = "CSV with merchantTransactionId and any of correlationId, checkoutEventType, checkoutEventStatus, "
+            + "confirmationStatus, confirmationReason, confirmationTimestamp, networkAuthorizationCode, "
+            + "networkTransactionIdentifier, paymentNetworkReference, transactionAmount and transactionCurrencyCode; "
+            + "- for stdin, .gz is decompressed."
+    )
+    private String input;
+
+    @CommandLine.Option(
+        names = "--output",
+        required = true,
+        description = "Status CSV with one row per input row (.gz is compressed, - for stdout)."
+    )
+    private String output;
+
+    @CommandLine.Option(names = "--config", required = true, description = "Properties file with API, OAuth, and encryption settings.")
+    private Path configPath;
+
+    @CommandLine.Option(
+        names = "--concurrency",
+        defaultValue = "16",
+        description = "Maximum number of confirmations in flight (default: ${DEFAULT-VALUE}). Output order always matches input order."
+    )
+    private int concurrency;
+
+    @CommandLine.Option(names = "--checkout-event-type", description = "checkoutEventType for rows without one, e.g. 01 (Authorise).")
+    private String checkoutEventType;
+
+    @CommandLine.Option(names = "--checkout-event-status", description = "checkoutEventStatus for rows without one, e.g. 02 (Confirmed).")
+    private String checkoutEventStatus;
+
+    @CommandLine.Option(names = "--confirmation-status", description = "confirmationStatus for rows without one, e.g. 01 (Success).")
+    private String confirmationStatus;
+
+    @CommandLine.Option(
+        names = "--progress-interval",
+        defaultValue = "10",
+        description = "Seconds between progress lines on stderr; 0 disables them (default: ${DEFAULT-VALUE})."
+    )
+    private int progressIntervalSeconds;
+
+    @CommandLine.Option(
+        names = "--metrics-port",
+        defaultValue = "0",
+        description = "Serve live metrics on localhost at /metrics (Prometheus) and /metrics.json; 0 disables (default: ${DEFAULT-VALUE})."
+    )
+    private int metricsPort;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new ConfirmationsApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("--concurrency must be at least 1.");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        AppConfig config = AppConfig.load(configPath);
+        ExecutorService httpExecutor = config.httpClientThreads() > 0
+            ? Executors.newFixedThreadPool(config.httpClientThreads())
+            : null;
+        BatchMetrics metrics = new BatchMetrics();
+        RetryingCheckout checkout = new RetryingCheckout(
+            new CheckoutClient(mapper, config, httpExecutor, metrics),
+            RateLimiter.of(config.rateLimitPerSecond(), config.rateLimitBurst()),
+            RetryPolicy.from(config),
+            HedgePolicy.disabled(),
+            new AdaptiveConcurrencyLimit(concurrency),
+            metrics);
+
+        MetricsReporter reporter = MetricsReporter.start(metrics, mapper, progressIntervalSeconds, metricsPort);
+        try (CSVParser parser = new CSVParser(CsvStreams.openReader(input), INPUT_FORMAT);
+             CSVPrinter printer = new CSVPrinter(
+                 new BufferedWriter(new OutputStreamWriter(CsvStreams.openOutputStream(output), StandardCharsets.UTF_8)),
+                 CSVFormat.DEFAULT.builder().setHeader(STATUS_HEADER).build())) {
+
+            Deque<CompletableFuture<Object[]>> inFlight = new ArrayDeque<>(concurrency);
+            try {
+                for (CSVRecord record : parser) {
+                    if (inFlight.size() >= concurrency) {
+                        printer.printRecord(await(inFlight.removeFirst()));
+                    }
+                    inFlight.addLast(confirm(mapper, checkout, metrics, record));
+                }
+                while (!inFlight.isEmpty()) {
+                    printer.printRecord(await(inFlight.removeFirst()));
+                }
+            } finally {
+                inFlight.forEach(future -> future.cancel(true));
+            }
+        } finally {
+            reporter.close();
+            if (httpExecutor != null) {
+                httpExecutor.shutdown();
+            }
+        }
+        System.err.print(metrics.summary());
+        return metrics.rowsFailed() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Submits the confirmation for {@code record}. The returned future never completes
+     * exceptionally; a failure yields a status row with its {@link ErrorCategory}.
+     */
+    private CompletableFuture<Object[]> confirm(ObjectMapper mapper, RetryingCheckout checkout, BatchMetrics metrics, CSVRecord record)
+        throws IOException, InterruptedException {
+        String merchantTransactionId = CheckoutPipeline.value(record, "merchantTransactionId");
+        String correlationId = CheckoutPipeline.value(record, "correlationId");
+        if (correlationId == null || correlationId.isEmpty()) {
+            // The API accepts an integrator-generated id in the same format when none was received.
+            correlationId = UUID.randomUUID().toString();
+        }
+        RowTrace trace = new RowTrace(merchantTransactionId);
+        if (merchantTransactionId == null || merchantTransactionId.isEmpty()) {
+            System.err.println("Skipping row " + record.getRecordNumber() + " with missing merchantTransactionId.");
+            metrics.rowFailed();
+            trace.failed(ErrorCategory.MISSING_ID, "Missing merchantTransactionId.");
+            return CompletableFuture.completedFuture(statusRow(trace, correlationId));
+        }
+
+        byte[] body = mapper.writeValueAsBytes(confirmationRequest(mapper, record, merchantTransactionId, correlationId));
+        String sentCorrelationId = correlationId;
+        AdaptiveConcurrencyLimit limit = checkout.concurrencyLimit();
+        limit.acquire();
+        long started = System.nanoTime();
+        CompletableFuture<Integer> response;
+        try {
+            response = checkout.confirmAsync(merchantTransactionId, body, trace);
+        } catch (RuntimeException ex) {
+            // Signing or building the request failed before there was a future to release the permit.
+            response = CompletableFuture.failedFuture(ex);
+        }
+        return response
+            .whenComplete((status, ex) -> limit.release())
+            .handle((status, ex) -> {
+                if (ex == null) {
+                    metrics.rowSucceeded();
+                } else {
+                    Throwable cause = unwrap(ex);
+                    System.err.println("Failed to confirm transaction " + merchantTransactionId + ": " + cause.getMessage());
+                    metrics.rowFailed();
+                    trace.failed(cause);
+                }
+                metrics.recordStage(BatchMetrics.Stage.ROW, started);
+                trace.finished(started);
+                return statusRow(trace, sentCorrelationId);
+            });
+    }
+
+    private ObjectNode confirmationRequest(ObjectMapper mapper, CSVRecord record, String merchantTransactionId, String correlationId) {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("merchantTransactionId", merchantTransactionId);
+        request.put("correlationId", correlationId);
+        ObjectNode confirmationData = request.putObject("confirmationData");
+        for (String field : CONFIRMATION_FIELDS) {
+            String value = CheckoutPipeline.value(record, field);
+            if (value != null && !value.isEmpty()) {
+                confirmationData.put(field, value);
+            }
+        }
+        putIfAbsent(confirmationData, "checkoutEventType", checkoutEventType);
+        putIfAbsent(confirmationData, "checkoutEventStatus", checkoutEventStatus);
+        putIfAbsent(confirmationData, "confirmationStatus", confirmationStatus);
+        String amount = CheckoutPipeline.value(record, "transactionAmount");
+        if (amount != null && !amount.isEmpty()) {
+            confirmationData.putObject("transactionAmount")
+                .put("transactionAmount", amount)
+                .put("transactionCurrencyCode", CheckoutPipeline.value(record, "transactionCurrencyCode"));
+        }
+        return request;
+    }
+
+    private static void putIfAbsent(ObjectNode node, String field, String value) {
+        if (value != null && !node.has(field)) {
+            node.put(field, value);
+        }
+    }
+
+    private static Object[] statusRow(RowTrace trace, String correlationId) {
+        ErrorCategory category = trace.category();
+        return new Object[] {
+            DecryptedRows.nullToEmpty(trace.merchantTransactionId()),
+            correlationId,
+            category == null ? AuditLog.OK : category.name(),
+            trace.statusCode() == 0 ? "" : Integer.toString(trace.statusCode()),
+            Integer.toString(trace.attempts()),
+            Long.toString(trace.rowNanos() / 1_000_000),
+            DecryptedRows.nullToEmpty(trace.error())
+        };
+    }
+
+    private static Object[] await(CompletableFuture<Object[]> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Confirmation failed unexpectedly", ex.getCause());
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        Throwable current = ex;
+        while ((current instanceof CompletionException || current instanceof UncheckedIOException)
+            && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The original 13-column CSV output with a header row, byte for byte as commons-csv
+ * {@code CSVFormat.DEFAULT} prints it: minimal quoting, {@code ""} escapes and {@code \r\n} line
+ * ends. Fields are encoded as UTF-8 straight from the row's Strings into one reused buffer, which
+ * goes to the stream in large writes, so writing a row allocates nothing.
+ */
+final class CsvOutputSink implements OutputSink {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Most bytes one char writes: four for a surrogate pair, which takes two.
+    private static final int MAX_BYTES_PER_CHAR = 4;
+    private static final boolean[] QUOTE_IF_CONTAINED = new boolean[128];
+
+    static {
+        QUOTE_IF_CONTAINED['\r'] = true;
+        QUOTE_IF_CONTAINED['\n'] = true;
+        QUOTE_IF_CONTAINED['"'] = true;
+        QUOTE_IF_CONTAINED[','] = true;
+    }
+
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length;
+
+    CsvOutputSink(OutputStream outputStream, boolean append) throws IOException {
+        this.outputStream = outputStream;
+        // The header is already in an output being appended to.
+        if (!append) {
+            write(DecryptedRows.HEADER);
+        }
+    }
+
+    @Override
+    public void write(Object[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                ensureCapacity(1);
+                buffer[length++] = ',';
+            }
+            // As with CSVPrinter, null is written as nothing, even where an empty value is quoted.
+            if (row[i] != null) {
+                writeField(row[i].toString(), i == 0);
+            }
+        }
+        ensureCapacity(2);
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void writeField(String value, boolean firstInRecord) throws IOException {
+        int fieldLength = value.length();
+        boolean quote = needsQuotes(value, firstInRecord);
+        if (quote) {
+            ensureCapacity(1);
+            buffer[length++] = '"';
+        }
+        for (int i = 0; i < fieldLength; i++) {
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+                if (c == '"') {
+                    buffer[length++] = '"';
+                }
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | c >> 6);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < fieldLength && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate becomes '?', as the UTF-8 encoder of an OutputStreamWriter writes it.
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xe0 | c >> 12);
+                buffer[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        if (quote) {
+            ensureCapacity(1);
+            buffer[length++] = '"';
+        }
+    }
+
+    /**
+     * The minimal quoting rule of commons-csv: an empty first field, a field starting at or below
+     * {@code #} or ending at or below a space, and a field containing a line break, quote or comma.
+     */
+    private static boolean needsQuotes(String value, boolean firstInRecord) {
+        int fieldLength = value.length();
+        if (fieldLength == 0) {
+            return firstInRecord;
+        }
+        if (value.charAt(0) <= '#' || value.charAt(fieldLength - 1) <= ' ') {
+            return true;
+        }
+        for (int i = 0; i < fieldLength; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && QUOTE_IF_CONTAINED[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (BUFFER_SIZE - length < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (length > 0) {
+            outputStream.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+}
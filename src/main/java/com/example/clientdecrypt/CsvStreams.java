@@ -0,0 +1,69 @@
+package com.example.clientdecrypt;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens inputs and outputs given on the command line: {@code -} means stdin/stdout and a
+ * {@code .gz} suffix means gzip, so multi-GB files can be piped or kept compressed without
+ * staging an uncompressed copy.
+ */
+final class CsvStreams {
+    static final String STDIO = "-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CsvStreams() {
+    }
+
+    static boolean isStdio(String location) {
+        return STDIO.equals(location);
+    }
+
+    static boolean isGzip(String location) {
+        return location.toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    static Reader openReader(String location) throws IOException {
+        InputStream inputStream = isStdio(location)
+            ? new FileInputStream(FileDescriptor.in)
+            : Files.newInputStream(Path.of(location));
+        try {
+            if (isGzip(location)) {
+                inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+            }
+        } catch (IOException ex) {
+            inputStream.close();
+            throw ex;
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a sequential, buffered output for an {@link OutputSink}. Plain files that should be
+     * resumable go through a {@link java.nio.channels.FileChannel} instead.
+     */
+    static OutputStream openOutputStream(String location) throws IOException {
+        // FileDescriptor.out avoids System.out's per-call locking and autoflush.
+        OutputStream outputStream = isStdio(location)
+            ? new FileOutputStream(FileDescriptor.out)
+            : Files.newOutputStream(Path.of(location));
+        if (isGzip(location)) {
+            outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+        return new BufferedOutputStream(outputStream, BUFFER_SIZE);
+    }
+}
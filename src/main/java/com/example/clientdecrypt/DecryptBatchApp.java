@@ -0,0 +1,230 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import picocli.CommandLine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+@CommandLine.Command(
+    name = "decrypt-batch",
+    mixinStandardHelpOptions = true,
+    description = "Decrypt pre-fetched encryptedPayload values offline, in parallel, into the client-decrypt output format."
+)
+public final class DecryptBatchApp implements Callable<Integer> {
+    @CommandLine.Option(
+        names = "--input",
+        required = true,
+        description = "JSON/JSONL objects or a CSV with merchantTransactionId and encryptedValue (optional cardNumber)."
+    )
+    private Path input;
+
+    @CommandLine.Option(names = "--output", required = true, description = "Output file path (.gz is compressed).")
+    private Path outputCsv;
+
+    @CommandLine.Option(
+        names = "--output-format",
+        description = "csv, jsonl or arrow (Arrow IPC stream); by default inferred from the --output extension."
+    )
+    private String outputFormat;
+
+    @CommandLine.Option(names = "--config", required = true, description = "Properties file with decryption key settings.")
+    private Path configPath;
+
+    @CommandLine.Option(
+        names = "--input-format",
+        description = "csv or json; by default inferred from the file extension (.json/.jsonl/.ndjson are JSON)."
+    )
+    private String inputFormat;
+
+    @CommandLine.Option(
+        names = "--parallelism",
+        description = "Decrypt threads (default: number of available processors)."
+    )
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(
+        names = "--chunk-size",
+        defaultValue = "4096",
+        description = "Rows decrypted in parallel before being written in order (default: ${DEFAULT-VALUE})."
+    )
+    private int chunkSize;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new DecryptBatchApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("--parallelism and --chunk-size must be at least 1.");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        AppConfig config = AppConfig.load(configPath);
+        PayloadDecryptor decryptor = new PayloadDecryptor(mapper, config);
+        String format = OutputSink.format(outputFormat, outputCsv.toString());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (EncryptedRows rows = openInput(mapper);
+             OutputSink sink = OutputSink.open(format, CsvStreams.openOutputStream(outputCsv.toString()), false)) {
+
+            List<EncryptedRow> chunk = new ArrayList<>(chunkSize);
+            while (rows.hasNext()) {
+                chunk.add(rows.next());
+                if (chunk.size() == chunkSize) {
+                    writeChunk(sink, decryptChunk(pool, decryptor, chunk));
+                    chunk.clear();
+                }
+            }
+            writeChunk(sink, decryptChunk(pool, decryptor, chunk));
+        } finally {
+            pool.shutdown();
+        }
+        return 0;
+    }
+
+    private static List<Object[]> decryptChunk(ForkJoinPool pool, PayloadDecryptor decryptor, List<EncryptedRow> chunk)
+        throws InterruptedException, IOException {
+        try {
+            return pool.submit(() -> chunk.parallelStream()
+                .map(row -> decrypt(decryptor, row))
+                .toList()).get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Decrypt worker failed unexpectedly", ex.getCause());
+        }
+    }
+
+    private static Object[] decrypt(PayloadDecryptor decryptor, EncryptedRow row) {
+        if (row.encryptedValue() == null || row.encryptedValue().isBlank()) {
+            System.err.println("Skipping row with missing encryptedValue for transaction " + row.merchantTransactionId() + ".");
+            return DecryptedRows.blank(row.cardNumber(), row.merchantTransactionId());
+        }
+        try {
+            return DecryptedRows.of(row.cardNumber(), row.merchantTransactionId(), decryptor.decrypt(row.encryptedValue()));
+        } catch (Exception ex) {
+            System.err.println("Failed to decrypt transaction " + row.merchantTransactionId() + ": " + ex.getMessage());
+            return DecryptedRows.blank(row.cardNumber(), row.merchantTransactionId());
+        }
+    }
+
+    private static void writeChunk(OutputSink sink, List<Object[]> rows) throws IOException {
+        for (Object[] row : rows) {
+            sink.write(row);
+        }
+    }
+
+    private EncryptedRows openInput(ObjectMapper mapper) throws IOException {
+        String format = inputFormat != null ? inputFormat.toLowerCase(Locale.ROOT) : formatFromExtension(input);
+        Reader reader = Files.newBufferedReader(input);
+        try {
+            return switch (format) {
+                case "json" -> new JsonRows(mapper.readerFor(JsonNode.class).readValues(reader));
+                case "csv" -> new CsvRows(new CSVParser(reader, CSVFormat.DEFAULT.builder()
+                    .setHeader()
+                    .setSkipHeaderRecord(true)
+                    .setTrim(true)
+                    .build()));
+                default -> throw new IllegalArgumentException("Unsupported --input-format: " + inputFormat);
+            };
+        } catch (IOException | RuntimeException ex) {
+            reader.close();
+            throw ex;
+        }
+    }
+
+    private static String formatFromExtension(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return "json";
+        }
+        return "csv";
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isValueNode() && !value.isNull() ? value.asText() : null;
+    }
+
+    private record EncryptedRow(String cardNumber, String merchantTransactionId, String encryptedValue) {
+    }
+
+    private interface EncryptedRows extends Iterator<EncryptedRow>, Closeable {
+    }
+
+    /**
+     * Reads a stream of JSON objects: one per line, or pretty-printed one after another.
+     * {@code encryptedValue} may be top-level or nested under {@code encryptedPayload}.
+     */
+    private static final class JsonRows implements EncryptedRows {
+        private final MappingIterator<JsonNode> values;
+
+        JsonRows(MappingIterator<JsonNode> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return values.hasNext();
+        }
+
+        @Override
+        public EncryptedRow next() {
+            JsonNode node = values.next();
+            JsonNode encryptedPayload = node.path("encryptedPayload");
+            String encryptedValue = encryptedPayload.isTextual()
+                ? encryptedPayload.asText()
+                : text(encryptedPayload.isObject() ? encryptedPayload : node, "encryptedValue");
+            return new EncryptedRow(text(node, "cardNumber"), text(node, "merchantTransactionId"), encryptedValue);
+        }
+
+        @Override
+        public void close() throws IOException {
+            values.close();
+        }
+    }
+
+    private static final class CsvRows implements EncryptedRows {
+        private final CSVParser parser;
+        private final Iterator<CSVRecord> records;
+
+        CsvRows(CSVParser parser) {
+            this.parser = parser;
+            this.records = parser.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records.hasNext();
+        }
+
+        @Override
+        public EncryptedRow next() {
+            CSVRecord record = records.next();
+            return new EncryptedRow(
+                CheckoutPipeline.value(record, "cardNumber"),
+                CheckoutPipeline.value(record, "merchantTransactionId"),
+                CheckoutPipeline.value(record, "encryptedValue"));
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running HTTP front end over a warm {@link RetryingCheckout} and {@link PayloadDecryptor}, so
+ * keys are loaded and the JIT is warm once instead of per invocation.
+ *
+ * <p>Requests run on virtual threads but at most {@code maxInFlightRequests} are served at once;
+ * beyond that the service answers 503 with {@code Retry-After} instead of queueing without bound.
+ * CSV batch jobs run on {@code jobWorkers} platform threads behind a bounded queue and are
+ * likewise rejected with 503 when the queue is full.
+ */
+final class DecryptService implements Closeable {
+    private static final int MAX_RETAINED_JOBS = 1000;
+
+    private final ObjectMapper mapper;
+    private final RetryingCheckout checkout;
+    private final PayloadDecryptor decryptor;
+    private final BatchMetrics metrics;
+    private final ResultCoalescer coalescer;
+    private final Settings settings;
+    private final Semaphore requestPermits;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ExecutorService requestExecutor;
+    private final HttpServer server;
+    private final Map<String, Job> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            if (size() <= MAX_RETAINED_JOBS || !eldest.getValue().finished()) {
+                return false;
+            }
+            Job job = eldest.getValue();
+            if (job.uploaded()) {
+                // Nobody can download the output of a job that is no longer listed.
+                deleteQuietly(job.output());
+                deleteQuietly(CheckpointJournal.journalPathFor(job.output()));
+            }
+            return true;
+        }
+    };
+
+    private DecryptService(
+        ObjectMapper mapper,
+        RetryingCheckout checkout,
+        PayloadDecryptor decryptor,
+        BatchMetrics metrics,
+        ResultCoalescer coalescer,
+        Settings settings
+    ) throws IOException {
+        this.mapper = mapper;
+        this.checkout = checkout;
+        this.decryptor = decryptor;
+        this.metrics = metrics;
+        this.coalescer = coalescer;
+        this.settings = settings;
+        this.requestPermits = new Semaphore(settings.maxInFlightRequests());
+        this.jobExecutor = new ThreadPoolExecutor(
+            settings.jobWorkers(), settings.jobWorkers(), 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(settings.jobQueueCapacity()));
+        this.requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(settings.bindAddress(), settings.port()), 0);
+        this.server.setExecutor(requestExecutor);
+        this.server.createContext("/health", exchange -> respond(exchange, 200, health()));
+        this.server.createContext("/metrics", exchange -> respondText(exchange, metrics.toPrometheus()));
+        this.server.createContext("/checkout", bounded(this::handleCheckout));
+        this.server.createContext("/decrypt", bounded(this::handleDecrypt));
+        this.server.createContext("/jobs", bounded(this::handleJobs));
+    }
+
+    static DecryptService start(
+        ObjectMapper mapper,
+        RetryingCheckout checkout,
+        PayloadDecryptor decryptor,
+        BatchMetrics metrics,
+        ResultCoalescer coalescer,
+        Settings settings
+    ) throws IOException {
+        Files.createDirectories(settings.jobDirectory());
+        DecryptService service = new DecryptService(mapper, checkout, decryptor, metrics, coalescer, settings);
+        service.server.start();
+        return service;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        jobExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    /**
+     * {@code POST /checkout} with {@code {"merchantTransactionId": ..., "cardNumber": ...}}.
+     */
+    private void handleCheckout(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "POST")) {
+            return;
+        }
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        String merchantTransactionId = text(request, "merchantTransactionId");
+        if (merchantTransactionId == null || merchantTransactionId.isBlank()) {
+            respond(exchange, 400, error("merchantTransactionId is required."));
+            return;
+        }
+
+        long started = System.nanoTime();
+        ResultCoalescer.Lookup lookup = coalescer.lookup(merchantTransactionId, () -> fetch(merchantTransactionId));
+        if (lookup.shared()) {
+            metrics.rowDeduplicated();
+        }
+        PayloadDecryptor.DecryptedResult decrypted;
+        try {
+            decrypted = lookup.result().join();
+        } catch (CompletionException ex) {
+            metrics.rowFailed();
+            Throwable cause = ex.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : ex.getCause();
+            if (cause instanceof CheckoutException checkoutException) {
+                ObjectNode body = error("Checkout API returned HTTP " + checkoutException.statusCode() + ".");
+                body.put("upstreamStatus", checkoutException.statusCode());
+                respond(exchange, 502, body);
+            } else if (cause instanceof InterruptedException) {
+                respond(exchange, 503, error("Interrupted."));
+            } else if (cause instanceof DecryptionFailure) {
+                respond(exchange, 422, error("Failed to decrypt payload: " + cause.getCause().getMessage()));
+            } else {
+                respond(exchange, 502, error("Checkout failed: " + cause.getMessage()));
+            }
+            return;
+        }
+        respondRow(exchange, DecryptedRows.of(text(request, "cardNumber"), merchantTransactionId, decrypted), started);
+    }
+
+    private CompletableFuture<PayloadDecryptor.DecryptedResult> fetch(String merchantTransactionId) {
+        AdaptiveConcurrencyLimit limit = checkout.concurrencyLimit();
+        String encryptedPayload;
+        try {
+            limit.acquire();
+            try {
+                encryptedPayload = checkout.checkoutEncryptedPayload(merchantTransactionId);
+            } finally {
+                limit.release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(ex);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long decryptStarted = System.nanoTime();
+        try {
+            return CompletableFuture.completedFuture(decryptor.decrypt(encryptedPayload));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new DecryptionFailure(ex));
+        } finally {
+            metrics.recordStage(BatchMetrics.Stage.DECRYPT, decryptStarted);
+        }
+    }
+
+    /**
+     * {@code POST /decrypt} with a compact JWE as {@code text/plain}, or JSON carrying it as
+     * {@code encryptedValue} or {@code encryptedPayload} (optionally with {@code merchantTransactionId}
+     * and {@code cardNumber} to echo back).
+     */
+    private void handleDecrypt(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "POST")) {
+            return;
+        }
+        long started = System.nanoTime();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+        String encryptedValue = body;
+        String cardNumber = null;
+        String merchantTransactionId = null;
+        if (body.startsWith("{")) {
+            JsonNode request = mapper.readTree(body);
+            JsonNode encryptedPayload = request.path("encryptedPayload");
+            encryptedValue = encryptedPayload.isObject() ? text(encryptedPayload, "encryptedValue") : text(request, "encryptedPayload");
+            if (encryptedValue == null) {
+                encryptedValue = text(request, "encryptedValue");
+            }
+            cardNumber = text(request, "cardNumber");
+            merchantTransactionId = text(request, "merchantTransactionId");
+        }
+        if (encryptedValue == null || encryptedValue.isBlank()) {
+            respond(exchange, 400, error("encryptedValue is required."));
+            return;
+        }
+        respondDecrypted(exchange, cardNumber, merchantTransactionId, encryptedValue, started);
+    }
+
+    private void respondDecrypted(
+        HttpExchange exchange,
+        String cardNumber,
+        String merchantTransactionId,
+        String encryptedValue,
+        long started
+    ) throws IOException {
+        Object[] row;
+        long decryptStarted = System.nanoTime();
+        try {
+            row = DecryptedRows.of(cardNumber, merchantTransactionId, decryptor.decrypt(encryptedValue));
+        } catch (IOException ex) {
+            metrics.rowFailed();
+            respond(exchange, 422, error("Failed to decrypt payload: " + ex.getMessage()));
+            return;
+        } finally {
+            metrics.recordStage(BatchMetrics.Stage.DECRYPT, decryptStarted);
+        }
+        respondRow(exchange, row, started);
+    }
+
+    private void respondRow(HttpExchange exchange, Object[] row, long started) throws IOException {
+        ObjectNode result = mapper.createObjectNode();
+        for (int i = 0; i < DecryptedRows.HEADER.length; i++) {
+            result.put(DecryptedRows.HEADER[i], (String) row[i]);
+        }
+        metrics.rowSucceeded();
+        metrics.recordStage(BatchMetrics.Stage.ROW, started);
+        respond(exchange, 200, result);
+    }
+
+    /**
+     * {@code POST /jobs} starts a batch job from an uploaded input CSV ({@code text/csv}) or from
+     * {@code {"input": "/path/in.csv", "output": "/path/out.csv"}}; {@code GET /jobs/<id>} reports
+     * its progress and {@code GET /jobs/<id>/output} downloads the result once it has succeeded.
+     */
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+        if (path.length == 2) {
+            if (requireMethod(exchange, "POST")) {
+                submitJob(exchange);
+            }
+            return;
+        }
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(path[2]);
+        }
+        if (job == null || path.length > 4 || (path.length == 4 && !"output".equals(path[3]))) {
+            respond(exchange, 404, error("Unknown job."));
+            return;
+        }
+        if (!requireMethod(exchange, "GET")) {
+            return;
+        }
+        if (path.length == 3) {
+            respond(exchange, 200, job.toJson(mapper));
+        } else if (job.status() != JobStatus.SUCCEEDED) {
+            respond(exchange, 409, error("Job is " + job.status() + "."));
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", "text/csv");
+            exchange.sendResponseHeaders(200, Files.size(job.output()));
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                Files.copy(job.output(), outputStream);
+            }
+        }
+    }
+
+    private void submitJob(HttpExchange exchange) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path input;
+        Path output;
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean uploaded = contentType == null || !contentType.startsWith("application/json");
+        if (!uploaded) {
+            if (settings.jobPathRoots().isEmpty()) {
+                respond(exchange, 403, error("Jobs on server paths are disabled; start serve with --job-path-root."));
+                return;
+            }
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            String inputPath = text(request, "input");
+            String outputPath = text(request, "output");
+            if (inputPath == null || outputPath == null) {
+                respond(exchange, 400, error("input and output paths are required."));
+                return;
+            }
+            input = underJobPathRoot(Path.of(inputPath));
+            output = underJobPathRoot(Path.of(outputPath));
+            if (input == null || output == null) {
+                respond(exchange, 403, error("input and output must be under a --job-path-root."));
+                return;
+            }
+            if (!Files.isReadable(input)) {
+                respond(exchange, 400, error("Input " + input + " is not readable."));
+                return;
+            }
+        } else {
+            input = settings.jobDirectory().resolve(id + ".input.csv");
+            output = settings.jobDirectory().resolve(id + ".csv");
+            try (InputStream body = exchange.getRequestBody()) {
+                Files.copy(body, input, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        Job job = new Job(id, input, output, uploaded);
+        // Registered before it is queued, so a status query right after the 202 finds it.
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        try {
+            jobExecutor.execute(() -> runJob(job));
+        } catch (RejectedExecutionException ex) {
+            synchronized (jobs) {
+                jobs.remove(id);
+            }
+            if (uploaded) {
+                Files.deleteIfExists(input);
+            }
+            exchange.getResponseHeaders().add("Retry-After", "5");
+            respond(exchange, 503, error("Job queue is full."));
+            return;
+        }
+        exchange.getResponseHeaders().add("Location", "/jobs/" + id);
+        respond(exchange, 202, job.toJson(mapper));
+    }
+
+    private void runJob(Job job) {
+        job.started();
+        try (InputRows rows = MappedCsvReader.open(job.input());
+             FileChannel outputChannel = FileChannel.open(job.output(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputSink sink = OutputSink.open(OutputSink.CSV, new BufferedOutputStream(Channels.newOutputStream(outputChannel)), false);
+             CheckpointJournal journal = CheckpointJournal.open(CheckpointJournal.journalPathFor(job.output()),
+                 outputChannel, sink, CheckpointJournal.START, settings.checkpointEvery())) {
+            new CheckoutPipeline(checkout, decryptor, settings.jobConcurrency(), job.metrics(), coalescer).run(rows, sink, journal);
+            job.finished(JobStatus.SUCCEEDED, null);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            job.finished(JobStatus.FAILED, "Interrupted.");
+        } catch (Exception ex) {
+            System.err.println("Job " + job.id() + " failed: " + ex.getMessage());
+            job.finished(JobStatus.FAILED, ex.getMessage());
+        } finally {
+            if (job.uploaded()) {
+                deleteQuietly(job.input());
+            }
+        }
+    }
+
+    /**
+     * @return {@code path} with symbolic links resolved if it lies under one of the
+     *         {@code jobPathRoots}, otherwise {@code null}
+     */
+    private Path underJobPathRoot(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath().normalize();
+        Path parent = absolute.getParent();
+        if (parent == null || absolute.getFileName() == null || !Files.isDirectory(parent)) {
+            return null;
+        }
+        Path resolved = parent.toRealPath().resolve(absolute.getFileName());
+        if (Files.exists(resolved)) {
+            resolved = resolved.toRealPath();
+        }
+        for (Path root : settings.jobPathRoots()) {
+            if (resolved.startsWith(root)) {
+                return resolved;
+            }
+        }
+        return null;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            System.err.println("Could not delete " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private ObjectNode health() {
+        ObjectNode health = mapper.createObjectNode();
+        health.put("status", "UP");
+        health.put("inFlightRequests", settings.maxInFlightRequests() - requestPermits.availablePermits());
+        health.put("runningJobs", jobExecutor.getActiveCount());
+        health.put("queuedJobs", jobExecutor.getQueue().size());
+        health.put("upstreamConcurrencyLimit", checkout.concurrencyLimit().currentLimit());
+        return health;
+    }
+
+    /**
+     * Sheds load with 503 once {@code maxInFlightRequests} requests are being served.
+     */
+    private HttpHandler bounded(HttpHandler handler) {
+        return exchange -> {
+            try (exchange) {
+                if (!requestPermits.tryAcquire()) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    respond(exchange, 503, error("Too many requests in flight."));
+                    return;
+                }
+                try {
+                    handler.handle(exchange);
+                } catch (IOException | RuntimeException ex) {
+                    System.err.println("Request " + exchange.getRequestURI() + " failed: " + ex.getMessage());
+                    respond(exchange, 500, error(ex.getMessage()));
+                } finally {
+                    requestPermits.release();
+                }
+            }
+        };
+    }
+
+    private boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (method.equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        exchange.getResponseHeaders().add("Allow", method);
+        respond(exchange, 405, error("Use " + method + "."));
+        return false;
+    }
+
+    private ObjectNode error(String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("error", message);
+        return error;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static void respondText(HttpExchange exchange, String body) throws IOException {
+        try (exchange) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isValueNode() && !value.isNull() ? value.asText() : null;
+    }
+
+    enum JobStatus {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    /**
+     * A submitted batch job. It only holds {@link BatchMetrics} while running; afterwards just the
+     * row counts are kept for status queries.
+     */
+    private static final class Job {
+        private final String id;
+        private final Path input;
+        private final Path output;
+        private final boolean uploaded;
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile BatchMetrics metrics;
+        private volatile String error;
+        private volatile long rowsSucceeded;
+        private volatile long rowsFailed;
+
+        /**
+         * @param uploaded {@code true} if the service owns the input and output files in its job directory
+         */
+        Job(String id, Path input, Path output, boolean uploaded) {
+            this.id = id;
+            this.input = input;
+            this.output = output;
+            this.uploaded = uploaded;
+        }
+
+        String id() {
+            return id;
+        }
+
+        Path input() {
+            return input;
+        }
+
+        Path output() {
+            return output;
+        }
+
+        boolean uploaded() {
+            return uploaded;
+        }
+
+        JobStatus status() {
+            return status;
+        }
+
+        BatchMetrics metrics() {
+            return metrics;
+        }
+
+        boolean finished() {
+            return status == JobStatus.SUCCEEDED || status == JobStatus.FAILED;
+        }
+
+        void started() {
+            metrics = new BatchMetrics();
+            status = JobStatus.RUNNING;
+        }
+
+        void finished(JobStatus finalStatus, String failure) {
+            BatchMetrics finalMetrics = metrics;
+            rowsSucceeded = finalMetrics.rowsSucceeded();
+            rowsFailed = finalMetrics.rowsFailed();
+            error = failure;
+            status = finalStatus;
+            metrics = null;
+        }
+
+        ObjectNode toJson(ObjectMapper mapper) {
+            ObjectNode json = mapper.createObjectNode();
+            json.put("id", id);
+            json.put("status", status.name());
+            json.put("output", output.toString());
+            BatchMetrics running = metrics;
+            if (running != null) {
+                json.put("rowsSucceeded", running.rowsSucceeded());
+                json.put("rowsFailed", running.rowsFailed());
+                json.put("elapsedSeconds", running.elapsedSeconds());
+            } else {
+                json.put("rowsSucceeded", rowsSucceeded);
+                json.put("rowsFailed", rowsFailed);
+            }
+            if (error != null) {
+                json.put("error", error);
+            }
+            return json;
+        }
+    }
+
+    record Settings(
+        String bindAddress,
+        int port,
+        int maxInFlightRequests,
+        int jobWorkers,
+        int jobQueueCapacity,
+        int jobConcurrency,
+        Path jobDirectory,
+        int checkpointEvery,
+        List<Path> jobPathRoots
+    ) {
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CommandLine.Command(
+    name = "serve",
+    mixinStandardHelpOptions = true,
+    description = "Run a local HTTP service with warm keys for checkout+decrypt, decrypt-only and CSV batch jobs."
+)
+public final class DecryptServiceApp implements Callable<Integer> {
+    @CommandLine.Option(names = "--config", required = true, description = "Properties file with API, OAuth, and encryption settings.")
+    private Path configPath;
+
+    @CommandLine.Option(names = "--bind", defaultValue = "127.0.0.1", description = "Address to listen on (default: ${DEFAULT-VALUE}).")
+    private String bindAddress;
+
+    @CommandLine.Option(names = "--port", defaultValue = "8090", description = "Port to listen on (default: ${DEFAULT-VALUE}).")
+    private int port;
+
+    @CommandLine.Option(
+        names = "--max-in-flight",
+        defaultValue = "256",
+        description = "Requests served at once before answering 503 (default: ${DEFAULT-VALUE})."
+    )
+    private int maxInFlightRequests;
+
+    @CommandLine.Option(
+        names = "--upstream-concurrency",
+        defaultValue = "64",
+        description = "Maximum concurrent /checkout calls to the API across requests and jobs (default: ${DEFAULT-VALUE})."
+    )
+    private int upstreamConcurrency;
+
+    @CommandLine.Option(names = "--job-workers", defaultValue = "2", description = "Batch jobs run at once (default: ${DEFAULT-VALUE}).")
+    private int jobWorkers;
+
+    @CommandLine.Option(
+        names = "--job-queue",
+        defaultValue = "32",
+        description = "Batch jobs waiting for a worker before submissions get 503 (default: ${DEFAULT-VALUE})."
+    )
+    private int jobQueueCapacity;
+
+    @CommandLine.Option(
+        names = "--job-concurrency",
+        defaultValue = "16",
+        description = "Rows in flight per batch job, as --concurrency of the main command (default: ${DEFAULT-VALUE})."
+    )
+    private int jobConcurrency;
+
+    @CommandLine.Option(
+        names = "--job-dir",
+        defaultValue = "${sys:java.io.tmpdir}/client-decrypt-jobs",
+        description = "Directory for uploaded job inputs and their outputs (default: ${DEFAULT-VALUE})."
+    )
+    private Path jobDirectory;
+
+    @CommandLine.Option(
+        names = "--job-path-root",
+        description = "Directory under which POST /jobs may name input and output files on this host. Can be repeated; "
+            + "without it jobs must upload their input."
+    )
+    private List<Path> jobPathRoots = new ArrayList<>();
+
+    @CommandLine.Option(
+        names = "--checkpoint-every",
+        defaultValue = "1000",
+        description = "Rows between fsync'd checkpoints of job outputs (default: ${DEFAULT-VALUE})."
+    )
+    private int checkpointEvery;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new DecryptServiceApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (maxInFlightRequests < 1 || upstreamConcurrency < 1 || jobWorkers < 1 || jobQueueCapacity < 1 || jobConcurrency < 1) {
+            throw new IllegalArgumentException("Pool, queue and concurrency sizes must be at least 1.");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        AppConfig config = AppConfig.load(configPath);
+        ExecutorService httpExecutor = config.httpClientThreads() > 0
+            ? Executors.newFixedThreadPool(config.httpClientThreads())
+            : null;
+        BatchMetrics metrics = new BatchMetrics();
+        RetryingCheckout checkout = new RetryingCheckout(
+            new CheckoutClient(mapper, config, httpExecutor, metrics),
+            RateLimiter.of(config.rateLimitPerSecond(), config.rateLimitBurst()),
+            RetryPolicy.from(config),
+            HedgePolicy.from(config),
+            new AdaptiveConcurrencyLimit(upstreamConcurrency),
+            metrics);
+        PayloadDecryptor decryptor = new PayloadDecryptor(mapper, config);
+
+        DecryptService.Settings settings = new DecryptService.Settings(
+            bindAddress,
+            port,
+            maxInFlightRequests,
+            jobWorkers,
+            jobQueueCapacity,
+            jobConcurrency,
+            jobDirectory,
+            checkpointEvery,
+            realPaths(jobPathRoots));
+        DecryptService service = DecryptService.start(mapper, checkout, decryptor, metrics, ResultCoalescer.from(config), settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.close();
+            if (httpExecutor != null) {
+                httpExecutor.shutdown();
+            }
+        }));
+        System.err.println("Serving on http://" + bindAddress + ":" + service.port() + " (jobs in " + jobDirectory + ").");
+        new CountDownLatch(1).await();
+        return 0;
+    }
+
+    private static List<Path> realPaths(List<Path> directories) throws IOException {
+        List<Path> realPaths = new ArrayList<>();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                throw new IllegalArgumentException("--job-path-root " + directory + " is not a directory.");
+            }
+            realPaths.add(directory.toRealPath());
+        }
+        return realPaths;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.clientdecrypt;
+
+/**
+ * The fixed 13-column output schema shared by every command that writes decrypted results.
+ */
+final class DecryptedRows {
+    static final String[] HEADER = {
+        "cardNumber",
+        "merchantTransactionId",
+        "cardPrimaryAccountNumber",
+        "cardPanExpirationMonth",
+        "cardPanExpirationYear",
+        "cardholderFullName",
+        "tokenPaymentToken",
+        "tokenExpirationMonth",
+        "tokenExpirationYear",
+        "tokenPaymentAccountReference",
+        "dynamicDataType",
+        "dynamicDataValue",
+        "dynamicDataExpiration"
+    };
+
+    private DecryptedRows() {
+    }
+
+    static Object[] of(String cardNumber, String merchantTransactionId, PayloadDecryptor.DecryptedResult decrypted) {
+        return new Object[] {
+            nullToEmpty(cardNumber),
+            nullToEmpty(merchantTransactionId),
+            nullToEmpty(decrypted.cardPrimaryAccountNumber()),
+            nullToEmpty(decrypted.cardPanExpirationMonth()),
+            nullToEmpty(decrypted.cardPanExpirationYear()),
+            nullToEmpty(decrypted.cardholderFullName()),
+            nullToEmpty(decrypted.tokenPaymentToken()),
+            nullToEmpty(decrypted.tokenExpirationMonth()),
+            nullToEmpty(decrypted.tokenExpirationYear()),
+            nullToEmpty(decrypted.tokenPaymentAccountReference()),
+            nullToEmpty(decrypted.dynamicDataType()),
+            nullToEmpty(decrypted.dynamicDataValue()),
+            nullToEmpty(decrypted.dynamicDataExpiration())
+        };
+    }
+
+    static Object[] blank(String cardNumber, String merchantTransactionId) {
+        return new Object[] {
+            nullToEmpty(cardNumber),
+            nullToEmpty(merchantTransactionId),
+            "", "", "", "", "", "", "", "", "", "", ""
+        };
+    }
+
+    static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
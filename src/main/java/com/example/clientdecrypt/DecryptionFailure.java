@@ -0,0 +1,15 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+
+/**
+ * Marks a failure to decrypt a payload the Checkout API did return, so callers can tell it from
+ * a failed checkout call.
+ */
+final class DecryptionFailure extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    DecryptionFailure(IOException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
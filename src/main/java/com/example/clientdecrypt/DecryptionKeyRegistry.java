@@ -0,0 +1,113 @@
+package com.example.clientdecrypt;
+
+import com.mastercard.developer.utils.EncryptionUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decryption keys indexed by JWE {@code kid}. Each key is registered under the SHA-256
+ * fingerprint of its public key, which is what Mastercard uses as {@code kid} for keys created in
+ * the Developers Portal, and the primary key also under its configured key id (if any). During a
+ * key rotation the old and new keys are both registered, and every payload finds its key with one
+ * map lookup.
+ */
+final class DecryptionKeyRegistry {
+    private final Map<String, PrivateKey> keysById;
+    private final PrivateKey defaultKey;
+
+    private DecryptionKeyRegistry(Map<String, PrivateKey> keysById, PrivateKey defaultKey) {
+        this.keysById = keysById;
+        this.defaultKey = defaultKey;
+    }
+
+    /**
+     * @param primaryKey     key used for payloads whose {@code kid} is absent or unknown
+     * @param primaryKeyId   explicit {@code kid} for the primary key, or {@code null}
+     * @param additionalKeys further keys, found by their fingerprint
+     */
+    static DecryptionKeyRegistry of(PrivateKey primaryKey, String primaryKeyId, List<PrivateKey> additionalKeys)
+        throws GeneralSecurityException {
+        Map<String, PrivateKey> keysById = new HashMap<>();
+        for (PrivateKey key : additionalKeys) {
+            String fingerprint = fingerprint(key);
+            if (fingerprint != null) {
+                keysById.put(fingerprint, key);
+            }
+        }
+        // Registered last so the primary key wins if it is also listed among the additional keys.
+        String fingerprint = fingerprint(primaryKey);
+        if (fingerprint != null) {
+            keysById.put(fingerprint, primaryKey);
+        }
+        if (primaryKeyId != null) {
+            keysById.put(primaryKeyId, primaryKey);
+        }
+        return new DecryptionKeyRegistry(Map.copyOf(keysById), primaryKey);
+    }
+
+    /**
+     * Loads the primary key from {@code decryptionKeyPath} (PKCS#12) or {@code decryptionKeyPlainPath}
+     * and the keys in {@code additionalDecryptionKeyPaths}. An additional path with no file yet is
+     * skipped, so the next key can be listed before it is deployed.
+     */
+    static DecryptionKeyRegistry load(AppConfig config) throws IOException, GeneralSecurityException {
+        PrivateKey primaryKey = config.decryptionKeyPath() != null
+            ? EncryptionUtils.loadDecryptionKey(config.decryptionKeyPath(), config.decryptionKeyAlias(), config.decryptionKeyPassword())
+            : EncryptionUtils.loadDecryptionKey(config.decryptionKeyPlainPath());
+        List<PrivateKey> additionalKeys = new ArrayList<>();
+        for (String path : config.additionalDecryptionKeyPaths()) {
+            if (Files.notExists(Path.of(path))) {
+                System.err.println("Skipping decryption key " + path + ": the file does not exist yet.");
+                continue;
+            }
+            additionalKeys.add(EncryptionUtils.loadDecryptionKey(path));
+        }
+        return of(primaryKey, config.decryptionKeyId(), additionalKeys);
+    }
+
+    /**
+     * @return the key registered for {@code kid}, or the default key when the id is absent or unknown
+     */
+    PrivateKey find(String kid) {
+        if (kid != null) {
+            PrivateKey key = keysById.get(kid);
+            if (key != null) {
+                return key;
+            }
+        }
+        return defaultKey;
+    }
+
+    /**
+     * @return the ids keys are registered under
+     */
+    List<String> keyIds() {
+        return keysById.keySet().stream().sorted().toList();
+    }
+
+    /**
+     * @return hex SHA-256 of the X.509-encoded public key, or {@code null} if it cannot be derived
+     */
+    static String fingerprint(PrivateKey key) throws GeneralSecurityException {
+        if (!(key instanceof RSAPrivateCrtKey crtKey)) {
+            return null;
+        }
+        PublicKey publicKey = KeyFactory.getInstance("RSA")
+            .generatePublic(new RSAPublicKeySpec(crtKey.getModulus(), crtKey.getPublicExponent()));
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded()));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The current {@link DecryptionKeyRegistry}. With {@code decryptionKeyReloadSeconds} set, the
+ * config file and the key files are checked at that interval. When any of them changed, the config
+ * is read again and all keys are reloaded, so a key path added to {@code additionalDecryptionKeyPaths}
+ * or a new key file written to an already listed path is picked up without restarting a
+ * long-running process. Only the key settings of the re-read config are used. The registry is
+ * swapped as a whole: a payload being decrypted keeps the key it already looked up, and a config
+ * or key file that fails to load (for example while it is still being written) leaves the previous
+ * keys in place until the next check.
+ */
+final class DecryptionKeys implements Supplier<DecryptionKeyRegistry> {
+    private AppConfig config;
+    private volatile DecryptionKeyRegistry current;
+    private List<String> stamps;
+    // Stamps of files that failed to load, so the failure is reported once rather than every check.
+    private List<String> failedStamps;
+
+    private DecryptionKeys(AppConfig config) throws IOException, GeneralSecurityException {
+        this.config = config;
+        this.stamps = stamps(config);
+        this.current = DecryptionKeyRegistry.load(config);
+    }
+
+    static DecryptionKeys load(AppConfig config) throws IOException, GeneralSecurityException {
+        DecryptionKeys keys = new DecryptionKeys(config);
+        if (config.decryptionKeyReloadSeconds() > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "decryption-key-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = config.decryptionKeyReloadSeconds();
+            scheduler.scheduleWithFixedDelay(keys::reloadIfChanged, interval, interval, TimeUnit.SECONDS);
+        }
+        return keys;
+    }
+
+    @Override
+    public DecryptionKeyRegistry get() {
+        return current;
+    }
+
+    /**
+     * Re-reads the config and reloads every key if the size or modification time of the config file
+     * or of any key file it lists changed since the last load.
+     *
+     * @return {@code true} if new keys were installed
+     */
+    synchronized boolean reloadIfChanged() {
+        List<String> latest = null;
+        try {
+            latest = stamps(config);
+            if (latest.equals(stamps) || latest.equals(failedStamps)) {
+                return false;
+            }
+            AppConfig reloaded = config.reload();
+            current = DecryptionKeyRegistry.load(reloaded);
+            config = reloaded;
+            // The re-read config may list other key files than the one the change was seen with.
+            stamps = stamps(reloaded);
+            failedStamps = null;
+            System.err.println("Reloaded decryption keys; registered key ids: " + String.join(", ", current.keyIds()));
+            return true;
+        } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+            failedStamps = latest;
+            System.err.println("Could not reload decryption keys, keeping the previous ones: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private static List<String> stamps(AppConfig config) throws IOException {
+        List<Path> files = new ArrayList<>();
+        files.add(config.source());
+        files.add(Path.of(config.decryptionKeyPath() != null ? config.decryptionKeyPath() : config.decryptionKeyPlainPath()));
+        config.additionalDecryptionKeyPaths().forEach(path -> files.add(Path.of(path)));
+        List<String> stamps = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                stamps.add(file + "@" + Files.getLastModifiedTime(file) + "/" + Files.size(file));
+            } catch (NoSuchFileException ex) {
+                // Replaced by rename, or listed before it is deployed; the next check sees the new file.
+                stamps.add(file + "@missing");
+            }
+        }
+        return stamps;
+    }
+}
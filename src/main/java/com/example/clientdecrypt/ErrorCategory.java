@@ -0,0 +1,79 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+
+/**
+ * Why a row produced a blank output row. Retryable categories are failures that a later run of
+ * the same row may not hit again; {@code client-decrypt --retry-failed} re-processes exactly those.
+ */
+enum ErrorCategory {
+    /** The input row has no merchantTransactionId. */
+    MISSING_ID(false),
+    /** The input row names a tenant the multi-tenant config does not list, or none without a default. */
+    UNKNOWN_TENANT(false),
+    /** No response within {@code requestTimeoutMillis}, after all retries. */
+    TIMEOUT(true),
+    /** The connection could not be opened or broke before a response arrived. */
+    CONNECTION(true),
+    /** HTTP 429 or 503 after all retries. */
+    THROTTLED(true),
+    /** Any other HTTP 5xx after all retries. */
+    SERVER_ERROR(true),
+    /** HTTP 401 or 403: the OAuth credentials or their permissions are wrong. */
+    UNAUTHORIZED(false),
+    /** HTTP 404: the API has no checkout for this merchantTransactionId. */
+    NOT_FOUND(false),
+    /** Any other HTTP 4xx. */
+    CLIENT_ERROR(false),
+    /** A successful response without a usable encrypted payload. */
+    BAD_RESPONSE(false),
+    /** The payload could not be decrypted, for example with a key that is not configured. */
+    DECRYPTION(false),
+    /** Anything else; see the error message. */
+    INTERNAL(false);
+
+    private final boolean retryable;
+
+    ErrorCategory(boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    boolean retryable() {
+        return retryable;
+    }
+
+    /**
+     * @param failure the unwrapped cause of a failed row
+     */
+    static ErrorCategory of(Throwable failure) {
+        if (failure instanceof CheckoutException checkoutException) {
+            int status = checkoutException.statusCode();
+            if (status == 429 || status == 503) {
+                return THROTTLED;
+            }
+            if (status >= 500) {
+                return SERVER_ERROR;
+            }
+            if (status == 401 || status == 403) {
+                return UNAUTHORIZED;
+            }
+            if (status == 404) {
+                return NOT_FOUND;
+            }
+            return status >= 400 ? CLIENT_ERROR : BAD_RESPONSE;
+        }
+        if (failure instanceof DecryptionFailure) {
+            return DECRYPTION;
+        }
+        if (failure instanceof HttpTimeoutException) {
+            return TIMEOUT;
+        }
+        if (failure instanceof JsonProcessingException) {
+            return BAD_RESPONSE;
+        }
+        return failure instanceof IOException ? CONNECTION : INTERNAL;
+    }
+}
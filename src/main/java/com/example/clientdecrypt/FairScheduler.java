@@ -0,0 +1,145 @@
+package com.example.clientdecrypt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Admits the checkout calls of several tenants into one shared pool of concurrent calls, sized by
+ * an {@link AdaptiveConcurrencyLimit}, by stride scheduling: every tenant has a pass that advances
+ * by {@code 1 / weight} per admitted call, and whenever a slot is free the waiting tenant with the
+ * lowest pass goes next. Backlogged tenants therefore share the calls in proportion to their
+ * weights however many rows each has queued, and a tenant that was idle rejoins at the current
+ * pass instead of with credit for its idle time.
+ *
+ * <p>A tenant is passed over while it has {@code maxConcurrency} calls in flight, or while its rate
+ * limiter is in debt and it already has a call in flight that will wait for those permits, so a
+ * tenant held back by its own rate limit does not sit on shared slots.
+ */
+final class FairScheduler {
+    private final AdaptiveConcurrencyLimit limit;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private int inFlight;
+    private double virtualTime;
+
+    FairScheduler(AdaptiveConcurrencyLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @param maxConcurrency the most calls the tenant may have in flight, or 0 for no cap of its own
+     */
+    synchronized void addTenant(String tenant, int weight, int maxConcurrency, RateLimiter rateLimiter) {
+        lanes.put(tenant, new Lane(tenant, weight, maxConcurrency, rateLimiter));
+    }
+
+    /**
+     * Queues a call for {@code tenant}.
+     *
+     * @return a future that completes when the call may start; the caller must then {@link #release} it
+     */
+    CompletableFuture<Void> acquire(String tenant) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        List<CompletableFuture<Void>> admitted;
+        synchronized (this) {
+            Lane lane = lane(tenant);
+            if (lane.waiting.isEmpty() && lane.inFlight == 0) {
+                lane.pass = Math.max(lane.pass, virtualTime);
+            }
+            lane.waiting.addLast(new Waiter(permit, System.nanoTime()));
+            admitted = dispatch();
+        }
+        // Completed outside the lock: the first stage of an admitted call runs in complete().
+        admitted.forEach(admittedPermit -> admittedPermit.complete(null));
+        return permit;
+    }
+
+    void release(String tenant) {
+        List<CompletableFuture<Void>> admitted;
+        synchronized (this) {
+            inFlight--;
+            lane(tenant).inFlight--;
+            admitted = dispatch();
+        }
+        admitted.forEach(permit -> permit.complete(null));
+    }
+
+    /**
+     * One line per tenant with its weight, admitted calls and mean time spent queued.
+     */
+    synchronized String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Lane lane : lanes.values()) {
+            summary.append(String.format(Locale.ROOT, "Tenant %s (weight %d): %d calls, mean queue wait %.2fms%n",
+                lane.tenant, lane.weight, lane.admitted, lane.admitted == 0 ? 0 : lane.waitNanos / 1e6 / lane.admitted));
+        }
+        return summary.toString();
+    }
+
+    private Lane lane(String tenant) {
+        Lane lane = lanes.get(tenant);
+        if (lane == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        }
+        return lane;
+    }
+
+    private List<CompletableFuture<Void>> dispatch() {
+        List<CompletableFuture<Void>> admitted = new ArrayList<>();
+        long now = System.nanoTime();
+        while (inFlight < limit.currentLimit()) {
+            Lane next = null;
+            for (Lane lane : lanes.values()) {
+                if (lane.eligible() && (next == null || lane.pass < next.pass)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            Waiter waiter = next.waiting.removeFirst();
+            inFlight++;
+            next.inFlight++;
+            next.admitted++;
+            next.waitNanos += now - waiter.queuedNanos();
+            virtualTime = next.pass;
+            next.pass += 1.0 / next.weight;
+            admitted.add(waiter.permit());
+        }
+        return admitted;
+    }
+
+    private record Waiter(CompletableFuture<Void> permit, long queuedNanos) {
+    }
+
+    private static final class Lane {
+        private final String tenant;
+        private final int weight;
+        private final int maxConcurrency;
+        private final RateLimiter rateLimiter;
+        private final Deque<Waiter> waiting = new ArrayDeque<>();
+        private int inFlight;
+        private double pass;
+        private long admitted;
+        private long waitNanos;
+
+        private Lane(String tenant, int weight, int maxConcurrency, RateLimiter rateLimiter) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.maxConcurrency = maxConcurrency;
+            this.rateLimiter = rateLimiter;
+        }
+
+        boolean eligible() {
+            if (waiting.isEmpty() || (maxConcurrency > 0 && inFlight >= maxConcurrency)) {
+                return false;
+            }
+            return inFlight == 0 || !rateLimiter.inDebt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.clientdecrypt;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a slow checkout gets a second, hedged request: once it has been waiting longer
+ * than {@code hedgePercentile} of the successful checkout latencies seen so far (but at least
+ * {@code hedgeMinDelayMillis}), and only while hedges stay within {@code hedgeBudgetPercent} of
+ * all checkouts. No request is hedged until enough latencies have been seen to estimate the
+ * percentile.
+ */
+final class HedgePolicy {
+    private static final HedgePolicy DISABLED = new HedgePolicy(0, 0, 0);
+    private static final int MIN_SAMPLES = 100;
+    private static final int REFRESH_INTERVAL = 50;
+    // Hedges allowed on top of the budget, so a short run or a slow start can still hedge.
+    private static final int BURST = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double budget;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private volatile long delayNanos = -1;
+
+    private HedgePolicy(double percentile, long minDelayMillis, double budgetPercent) {
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.budget = budgetPercent / 100;
+    }
+
+    static HedgePolicy from(AppConfig config) {
+        if (config.hedgePercentile() <= 0) {
+            return DISABLED;
+        }
+        return new HedgePolicy(config.hedgePercentile(), config.hedgeMinDelayMillis(), config.hedgeBudgetPercent());
+    }
+
+    static HedgePolicy disabled() {
+        return DISABLED;
+    }
+
+    boolean enabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * Counts a checkout about to be sent.
+     *
+     * @return nanoseconds after which to hedge it, or -1 while the percentile is not known yet
+     */
+    long nextDelayNanos() {
+        requests.incrementAndGet();
+        return delayNanos;
+    }
+
+    /**
+     * Takes one hedge from the budget.
+     *
+     * @return {@code false} if hedging now would exceed the budget
+     */
+    boolean tryHedge() {
+        while (true) {
+            long used = hedges.get();
+            if (used >= BURST + budget * requests.get()) {
+                return false;
+            }
+            if (hedges.compareAndSet(used, used + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Records how long one successful checkout request, primary or hedge, took.
+     */
+    void recordLatency(long startNanos) {
+        latencies.recordSince(startNanos);
+        long count = samples.incrementAndGet();
+        if (count >= MIN_SAMPLES && count % REFRESH_INTERVAL == 0) {
+            delayNanos = Math.max(minDelayNanos, latencies.percentileNanos(percentile));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The input columns {@link CheckoutPipeline} needs, one row at a time. Values are trimmed
+ * and {@code null} when the input has no such column.
+ */
+interface InputRows extends Closeable {
+    String CARD_NUMBER = "cardNumber";
+    String MERCHANT_TRANSACTION_ID = "merchantTransactionId";
+    String TENANT = "tenant";
+
+    /**
+     * Advances to the next row.
+     *
+     * @return {@code false} at the end of the input
+     */
+    boolean next() throws IOException;
+
+    String cardNumber();
+
+    String merchantTransactionId();
+
+    /**
+     * @return the tenant of a multi-tenant config this row belongs to
+     */
+    String tenant();
+
+    /**
+     * Rows of a CSV parser with a header, for inputs that cannot be memory-mapped (stdin, gzip).
+     */
+    static InputRows of(CSVParser parser) {
+        Iterator<CSVRecord> records = parser.iterator();
+        return new InputRows() {
+            private CSVRecord record;
+
+            @Override
+            public boolean next() {
+                if (!records.hasNext()) {
+                    return false;
+                }
+                record = records.next();
+                return true;
+            }
+
+            @Override
+            public String cardNumber() {
+                return CheckoutPipeline.value(record, CARD_NUMBER);
+            }
+
+            @Override
+            public String merchantTransactionId() {
+                return CheckoutPipeline.value(record, MERCHANT_TRANSACTION_ID);
+            }
+
+            @Override
+            public String tenant() {
+                return CheckoutPipeline.value(record, TENANT);
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    /**
+     * The rows of {@code rows} whose merchantTransactionId is in {@code merchantTransactionIds}.
+     */
+    static InputRows selecting(InputRows rows, Set<String> merchantTransactionIds) {
+        return new InputRows() {
+            @Override
+            public boolean next() throws IOException {
+                while (rows.next()) {
+                    if (merchantTransactionIds.contains(rows.merchantTransactionId())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String cardNumber() {
+                return rows.cardNumber();
+            }
+
+            @Override
+            public String merchantTransactionId() {
+                return rows.merchantTransactionId();
+            }
+
+            @Override
+            public String tenant() {
+                return rows.tenant();
+            }
+
+            @Override
+            public void close() throws IOException {
+                rows.close();
+            }
+        };
+    }
+}
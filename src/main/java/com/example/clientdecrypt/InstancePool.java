@@ -0,0 +1,33 @@
+package com.example.clientdecrypt;
+
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Unbounded free-list of reusable crypto objects ({@code Cipher}, {@code Mac}, {@code Signature},
+ * {@code MessageDigest}). Thread-locals would be useless here because requests are signed and
+ * payloads decrypted on short-lived virtual threads.
+ */
+final class InstancePool<T> {
+    private final Queue<T> free = new ConcurrentLinkedQueue<>();
+    private final Factory<T> factory;
+
+    InstancePool(Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    T borrow() throws GeneralSecurityException {
+        T instance = free.poll();
+        return instance != null ? instance : factory.create();
+    }
+
+    void release(T instance) {
+        free.offer(instance);
+    }
+
+    @FunctionalInterface
+    interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * One JSON object per line, keyed by the output column names. Lines are self-contained, so an
+ * output truncated at a checkpoint can be appended to.
+ */
+final class JsonLinesOutputSink implements OutputSink {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final SerializedString[] FIELD_NAMES = new SerializedString[DecryptedRows.HEADER.length];
+
+    static {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            FIELD_NAMES[i] = new SerializedString(DecryptedRows.HEADER[i]);
+        }
+    }
+
+    private final JsonGenerator generator;
+
+    JsonLinesOutputSink(OutputStream outputStream) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8);
+        // Each object ends with its own newline instead of being separated from the next one.
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void write(Object[] row) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            generator.writeFieldName(FIELD_NAMES[i]);
+            generator.writeString((String) row[i]);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Direct decryption of compact JWE payloads ({@code RSA-OAEP-256}/{@code RSA-OAEP} key wrapping
+ * with {@code AxxxGCM} or {@code AxxxCBC-HSxxx} content encryption) without going through the
+ * JSON-path machinery of {@code JweEncryption}.
+ *
+ * <p>Parsed headers are cached per distinct protected header (in practice one per {@code kid}),
+ * {@link Cipher} and {@link Mac} instances are pooled rather than created per payload, and
+ * unwrapped content-encryption keys can be kept in a small LRU cache so a payload decrypted
+ * again skips the RSA private-key operation.
+ */
+final class JweDecrypter {
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+    private static final int MAX_CACHED_HEADERS = 64;
+    private static final OAEPParameterSpec OAEP_SHA256 = new OAEPParameterSpec(
+        "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+    private static final OAEPParameterSpec OAEP_SHA1 = new OAEPParameterSpec(
+        "SHA-1", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
+
+    private final ObjectMapper mapper;
+    private final Supplier<DecryptionKeyRegistry> keys;
+    private final Map<String, Header> headers = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> contentKeys;
+    private final InstancePool<Cipher> rsaCiphers = new InstancePool<>(() -> Cipher.getInstance("RSA/ECB/OAEPPadding"));
+    private final InstancePool<Cipher> gcmCiphers = new InstancePool<>(() -> Cipher.getInstance("AES/GCM/NoPadding"));
+    private final InstancePool<Cipher> cbcCiphers = new InstancePool<>(() -> Cipher.getInstance("AES/CBC/PKCS5Padding"));
+    private final Map<String, InstancePool<Mac>> macs = Map.of(
+        "HmacSHA256", new InstancePool<>(() -> Mac.getInstance("HmacSHA256")),
+        "HmacSHA384", new InstancePool<>(() -> Mac.getInstance("HmacSHA384")),
+        "HmacSHA512", new InstancePool<>(() -> Mac.getInstance("HmacSHA512")));
+
+    /**
+     * @param keys                current decryption keys, looked up once per payload
+     * @param contentKeyCacheSize maximum number of unwrapped content-encryption keys to keep; 0 disables the cache
+     */
+    JweDecrypter(ObjectMapper mapper, Supplier<DecryptionKeyRegistry> keys, int contentKeyCacheSize) {
+        this.mapper = mapper;
+        this.keys = keys;
+        this.contentKeys = contentKeyCacheSize > 0 ? lruCache(contentKeyCacheSize) : null;
+    }
+
+    /**
+     * @return the decrypted plaintext, or {@code null} if the payload uses algorithms this
+     *         decrypter does not implement and the caller should fall back to {@code JweEncryption}
+     */
+    byte[] decrypt(String compactJwe) throws IOException {
+        String[] parts = compactJwe.trim().split("\\.", -1);
+        if (parts.length != 5) {
+            throw new IOException("Malformed JWE: expected 5 parts but found " + parts.length + ".");
+        }
+        Header header = header(parts[0]);
+        if (!header.supported()) {
+            return null;
+        }
+
+        try {
+            byte[] contentKey = unwrapContentKey(header, parts[1]);
+            int expectedLength = contentKeyLength(header.enc());
+            if (contentKey.length != expectedLength) {
+                throw new DecryptionFailure(new IOException("JWE content-encryption key is " + contentKey.length
+                    + " bytes, but " + header.enc() + " needs " + expectedLength + "."));
+            }
+            byte[] aad = parts[0].getBytes(StandardCharsets.US_ASCII);
+            byte[] iv = BASE64_URL.decode(parts[2]);
+            byte[] ciphertext = BASE64_URL.decode(parts[3]);
+            byte[] tag = BASE64_URL.decode(parts[4]);
+            return header.enc().endsWith("GCM")
+                ? decryptGcm(contentKey, aad, iv, ciphertext, tag)
+                : decryptCbcHmac(header.enc(), contentKey, aad, iv, ciphertext, tag);
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw new IOException("Failed to decrypt payload", ex);
+        }
+    }
+
+    /**
+     * @return the private key for the payload's {@code kid}, for decrypting it by other means
+     */
+    PrivateKey keyFor(String compactJwe) throws IOException {
+        String trimmed = compactJwe.trim();
+        int dot = trimmed.indexOf('.');
+        if (dot < 0) {
+            throw new IOException("Malformed JWE: no protected header.");
+        }
+        return keys.get().find(header(trimmed.substring(0, dot)).kid());
+    }
+
+    private Header header(String encodedHeader) throws IOException {
+        Header header = headers.get(encodedHeader);
+        if (header != null) {
+            return header;
+        }
+        JsonNode node = mapper.readTree(BASE64_URL.decode(encodedHeader));
+        header = new Header(
+            node.path("alg").asText(""),
+            node.path("enc").asText(""),
+            node.path("kid").isTextual() ? node.path("kid").asText() : null,
+            node.has("zip"));
+        if (headers.size() < MAX_CACHED_HEADERS) {
+            headers.put(encodedHeader, header);
+        }
+        return header;
+    }
+
+    private byte[] unwrapContentKey(Header header, String encodedKey) throws GeneralSecurityException {
+        if (contentKeys != null) {
+            byte[] cached;
+            synchronized (contentKeys) {
+                cached = contentKeys.get(encodedKey);
+            }
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        PrivateKey privateKey = keys.get().find(header.kid());
+        Cipher cipher = rsaCiphers.borrow();
+        byte[] contentKey;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, privateKey, "RSA-OAEP-256".equals(header.alg()) ? OAEP_SHA256 : OAEP_SHA1);
+            contentKey = cipher.doFinal(BASE64_URL.decode(encodedKey));
+        } finally {
+            rsaCiphers.release(cipher);
+        }
+
+        if (contentKeys != null) {
+            synchronized (contentKeys) {
+                contentKeys.put(encodedKey, contentKey);
+            }
+        }
+        return contentKey;
+    }
+
+    private byte[] decryptGcm(byte[] contentKey, byte[] aad, byte[] iv, byte[] ciphertext, byte[] tag)
+        throws GeneralSecurityException {
+        byte[] input = new byte[ciphertext.length + tag.length];
+        System.arraycopy(ciphertext, 0, input, 0, ciphertext.length);
+        System.arraycopy(tag, 0, input, ciphertext.length, tag.length);
+
+        Cipher cipher = gcmCiphers.borrow();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(contentKey, "AES"), new GCMParameterSpec(tag.length * 8, iv));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(input);
+        } finally {
+            gcmCiphers.release(cipher);
+        }
+    }
+
+    /**
+     * RFC 7518 section 5.2: the first half of the key authenticates, the second half decrypts.
+     */
+    private byte[] decryptCbcHmac(String enc, byte[] contentKey, byte[] aad, byte[] iv, byte[] ciphertext, byte[] tag)
+        throws GeneralSecurityException {
+        int half = contentKey.length / 2;
+        InstancePool<Mac> macPool = macs.get(macAlgorithm(enc));
+        Mac mac = macPool.borrow();
+        byte[] fullTag;
+        try {
+            mac.init(new SecretKeySpec(contentKey, 0, half, mac.getAlgorithm()));
+            mac.update(aad);
+            mac.update(iv);
+            mac.update(ciphertext);
+            mac.update(ByteBuffer.allocate(Long.BYTES).putLong((long) aad.length * 8).array());
+            fullTag = mac.doFinal();
+        } finally {
+            macPool.release(mac);
+        }
+        byte[] expectedTag = new byte[half];
+        System.arraycopy(fullTag, 0, expectedTag, 0, half);
+        if (!MessageDigest.isEqual(expectedTag, tag)) {
+            throw new GeneralSecurityException("JWE authentication tag mismatch.");
+        }
+
+        Cipher cipher = cbcCiphers.borrow();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(contentKey, half, half, "AES"), new IvParameterSpec(iv));
+            return cipher.doFinal(ciphertext);
+        } finally {
+            cbcCiphers.release(cipher);
+        }
+    }
+
+    /**
+     * @return the content-encryption key length in bytes for {@code enc}: the AES key for GCM,
+     *         the MAC key and the AES key together for CBC-HMAC
+     */
+    private static int contentKeyLength(String enc) {
+        return switch (enc) {
+            case "A128GCM" -> 16;
+            case "A192GCM" -> 24;
+            case "A256GCM", "A128CBC-HS256" -> 32;
+            case "A192CBC-HS384" -> 48;
+            default -> 64;
+        };
+    }
+
+    private static String macAlgorithm(String enc) {
+        return switch (enc) {
+            case "A128CBC-HS256" -> "HmacSHA256";
+            case "A192CBC-HS384" -> "HmacSHA384";
+            default -> "HmacSHA512";
+        };
+    }
+
+    private static Map<String, byte[]> lruCache(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private record Header(String alg, String enc, String kid, boolean compressed) {
+        boolean supported() {
+            boolean knownAlg = "RSA-OAEP-256".equals(alg) || "RSA-OAEP".equals(alg);
+            boolean knownEnc = switch (enc) {
+                case "A128GCM", "A192GCM", "A256GCM", "A128CBC-HS256", "A192CBC-HS384", "A256CBC-HS512" -> true;
+                default -> false;
+            };
+            return knownAlg && knownEnc && !compressed;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CommandLine.Command(
+    name = "load-test",
+    mixinStandardHelpOptions = true,
+    description = "Drive checkout + decrypt at a fixed concurrency and report throughput and per-stage latency percentiles."
+)
+public final class LoadTestApp implements Callable<Integer> {
+    @CommandLine.Option(names = "--config", required = true, description = "Properties file with API, OAuth, and encryption settings.")
+    private Path configPath;
+
+    @CommandLine.Option(names = "--requests", defaultValue = "10000", description = "Measured requests (default: ${DEFAULT-VALUE}).")
+    private int requests;
+
+    @CommandLine.Option(names = "--warmup", defaultValue = "500", description = "Unmeasured requests sent first (default: ${DEFAULT-VALUE}).")
+    private int warmup;
+
+    @CommandLine.Option(names = "--concurrency", defaultValue = "64", description = "Requests in flight (default: ${DEFAULT-VALUE}).")
+    private int concurrency;
+
+    @CommandLine.Option(
+        names = "--mock",
+        description = "Start an embedded mock-checkout-server on a free port and point baseUrl at it."
+    )
+    private boolean mock;
+
+    @CommandLine.Mixin
+    private MockServerOptions mockOptions = new MockServerOptions();
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new LoadTestApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (requests < 1 || warmup < 0 || concurrency < 1) {
+            throw new IllegalArgumentException("--requests and --concurrency must be at least 1 and --warmup not negative.");
+        }
+        MockCheckoutServer server = mock ? MockCheckoutServer.start(mockOptions.settings(0)) : null;
+        try {
+            AppConfig config = server != null
+                ? AppConfig.load(configPath, Map.of("baseUrl", server.baseUrl()))
+                : AppConfig.load(configPath);
+            ObjectMapper mapper = new ObjectMapper();
+            PayloadDecryptor decryptor = new PayloadDecryptor(mapper, config);
+
+            if (warmup > 0) {
+                System.err.println("Warming up with " + warmup + " requests against " + config.baseUrl() + "...");
+                run(mapper, config, decryptor, new BatchMetrics(), "warmup-", warmup);
+            }
+            System.err.println("Sending " + requests + " requests at concurrency " + concurrency + "...");
+            BatchMetrics metrics = new BatchMetrics();
+            int finalLimit = run(mapper, config, decryptor, metrics, "load-", requests);
+            System.out.print(metrics.summary());
+            System.out.println("Concurrency limit at end: " + finalLimit);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the adaptive concurrency limit after the run
+     */
+    private int run(ObjectMapper mapper, AppConfig config, PayloadDecryptor decryptor, BatchMetrics metrics, String idPrefix, int count)
+        throws Exception {
+        RetryingCheckout checkout = new RetryingCheckout(
+            new CheckoutClient(mapper, config, null, metrics),
+            RateLimiter.of(config.rateLimitPerSecond(), config.rateLimitBurst()),
+            RetryPolicy.from(config),
+            HedgePolicy.from(config),
+            new AdaptiveConcurrencyLimit(concurrency),
+            metrics);
+        AdaptiveConcurrencyLimit limit = checkout.concurrencyLimit();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                String merchantTransactionId = idPrefix + i;
+                limit.acquire();
+                executor.execute(() -> {
+                    long started = System.nanoTime();
+                    try {
+                        String encryptedPayload = checkout.checkoutEncryptedPayload(merchantTransactionId);
+                        long decryptStarted = System.nanoTime();
+                        decryptor.decrypt(encryptedPayload);
+                        metrics.recordStage(BatchMetrics.Stage.DECRYPT, decryptStarted);
+                        metrics.rowSucceeded();
+                    } catch (Exception ex) {
+                        metrics.rowFailed();
+                    } finally {
+                        metrics.recordStage(BatchMetrics.Stage.ROW, started);
+                        limit.release();
+                    }
+                });
+            }
+        }
+        return limit.currentLimit();
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads {@code cardNumber}, {@code merchantTransactionId} and {@code tenant} from a memory-mapped
+ * CSV file with a header, with the same results as commons-csv {@code CSVFormat.DEFAULT} with a
+ * header and trimming: {@code ,} separated fields, {@code "} quoting with {@code ""} escapes,
+ * {@code \n}, {@code \r\n} or {@code \r} line breaks and empty lines skipped.
+ *
+ * <p>The column indices are looked up once from the header. Every other field is only scanned,
+ * and the wanted fields are decoded straight from the mapped bytes, so the only allocations
+ * per row are their Strings. Files are mapped in windows of up to 1 GiB, remapped at a record
+ * start when a record runs past the window.
+ *
+ * <p>{@link #open(Path, long, long)} reads only the rows whose line starts within a byte range
+ * {@code [start, end)}: reading begins at the first line start at or after {@code start} and
+ * ends with the line that contains byte {@code end - 1}. Adjacent ranges of one file therefore
+ * cover every row exactly once and can be read in parallel without a pre-scan, as long as lines
+ * end with {@code \n} and no field contains a quoted line break.
+ */
+final class MappedCsvReader implements InputRows {
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private static final int RECORD = 0;
+    private static final int END = 1;
+    private static final int REMAP = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+
+    // Absolute position of the next record; records starting at or after end belong to the next range.
+    private long position;
+    private long end = Long.MAX_VALUE;
+    private long row;
+
+    private int cardNumberColumn = -1;
+    private int merchantTransactionIdColumn = -1;
+    private int tenantColumn = -1;
+    private List<String> headerFields;
+    private byte[] scratch = new byte[256];
+    private String cardNumber;
+    private String merchantTransactionId;
+    private String tenant;
+
+    private MappedCsvReader(Path file, FileChannel channel, int windowSize) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    /**
+     * Opens {@code file} and reads its header.
+     */
+    static MappedCsvReader open(Path file) throws IOException {
+        return open(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens {@code file}, reads its header and positions at the first row whose line starts at or
+     * after {@code start}; rows whose line starts at or after {@code end} are not read.
+     */
+    static MappedCsvReader open(Path file, long start, long end) throws IOException {
+        return open(file, start, end, DEFAULT_WINDOW_SIZE);
+    }
+
+    static MappedCsvReader open(Path file, long start, long end, int windowSize) throws IOException {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid byte range [" + start + ", " + end + ").");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedCsvReader reader = new MappedCsvReader(file, channel, windowSize);
+            reader.readHeader();
+            if (start > reader.position) {
+                reader.seekLineStart(start);
+            }
+            reader.end = end;
+            return reader;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        int status = parseRecord(false);
+        if (status == REMAP) {
+            map(position);
+            status = parseRecord(false);
+            if (status == REMAP) {
+                throw new IOException(file + ": row " + (row + 1) + " is longer than " + windowSize + " bytes.");
+            }
+        }
+        if (status == END) {
+            cardNumber = null;
+            merchantTransactionId = null;
+            tenant = null;
+            return false;
+        }
+        row++;
+        return true;
+    }
+
+    @Override
+    public String cardNumber() {
+        return cardNumber;
+    }
+
+    @Override
+    public String merchantTransactionId() {
+        return merchantTransactionId;
+    }
+
+    @Override
+    public String tenant() {
+        return tenant;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void readHeader() throws IOException {
+        headerFields = new ArrayList<>();
+        int status = parseRecord(true);
+        if (status == REMAP) {
+            map(position);
+            headerFields.clear();
+            status = parseRecord(true);
+        }
+        if (status != RECORD) {
+            // An empty input has no header and no rows, like an empty CSVParser.
+            headerFields = null;
+            return;
+        }
+        // As in a header map, a repeated column name resolves to its last occurrence.
+        for (int column = 0; column < headerFields.size(); column++) {
+            if (CARD_NUMBER.equals(headerFields.get(column))) {
+                cardNumberColumn = column;
+            } else if (MERCHANT_TRANSACTION_ID.equals(headerFields.get(column))) {
+                merchantTransactionIdColumn = column;
+            } else if (TENANT.equals(headerFields.get(column))) {
+                tenantColumn = column;
+            }
+        }
+        headerFields = null;
+    }
+
+    /**
+     * Moves to the first line start at or after {@code start}: {@code start} itself if the byte
+     * before it ends a line, otherwise just after the next {@code \n}.
+     */
+    private void seekLineStart(long start) throws IOException {
+        long candidate = start - 1;
+        while (candidate < fileSize) {
+            if (candidate < windowStart || candidate >= windowStart + windowLimit) {
+                map(candidate);
+            }
+            if (window.get((int) (candidate - windowStart)) == '\n') {
+                break;
+            }
+            candidate++;
+        }
+        position = Math.min(candidate + 1, fileSize);
+        map(position);
+    }
+
+    /**
+     * Parses the record at {@link #position} within the current window.
+     *
+     * @return {@link #RECORD} with the wanted fields set and {@link #position} advanced,
+     *         {@link #END} at the end of the input or range, or {@link #REMAP} if the record runs
+     *         past the window
+     */
+    private int parseRecord(boolean header) throws IOException {
+        boolean lastWindow = windowStart + windowLimit == fileSize;
+        int p = (int) (position - windowStart);
+        // Empty lines are skipped, as with ignoreEmptyLines.
+        while (p < windowLimit && isLineBreak(window.get(p))) {
+            p++;
+        }
+        if (p == windowLimit) {
+            position = windowStart + p;
+            return lastWindow ? END : REMAP;
+        }
+        if (windowStart + p >= end) {
+            position = windowStart + p;
+            return END;
+        }
+        long recordStart = windowStart + p;
+        String card = null;
+        String merchant = null;
+        String rowTenant = null;
+        int column = 0;
+        while (true) {
+            boolean wanted = header || column == cardNumberColumn || column == merchantTransactionIdColumn
+                || column == tenantColumn;
+            int valueStart;
+            int valueEnd;
+            boolean escaped = false;
+            if (p < windowLimit && window.get(p) == '"') {
+                valueStart = ++p;
+                while (true) {
+                    if (p == windowLimit) {
+                        if (lastWindow) {
+                            throw new IOException(file + ": row " + (row + 1) + " ends inside a quoted field.");
+                        }
+                        position = recordStart;
+                        return REMAP;
+                    }
+                    if (window.get(p) == '"') {
+                        if (p + 1 < windowLimit && window.get(p + 1) == '"') {
+                            escaped = true;
+                            p += 2;
+                            continue;
+                        }
+                        if (p + 1 == windowLimit && !lastWindow) {
+                            position = recordStart;
+                            return REMAP;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                valueEnd = p++;
+                while (p < windowLimit && (window.get(p) == ' ' || window.get(p) == '\t')) {
+                    p++;
+                }
+                if (p < windowLimit && window.get(p) != ',' && !isLineBreak(window.get(p))) {
+                    throw new IOException(file + ": row " + (row + 1) + " has text after a closing quote.");
+                }
+            } else {
+                valueStart = p;
+                while (p < windowLimit && window.get(p) != ',' && !isLineBreak(window.get(p))) {
+                    p++;
+                }
+                valueEnd = p;
+            }
+            if (p == windowLimit && !lastWindow) {
+                position = recordStart;
+                return REMAP;
+            }
+
+            if (wanted) {
+                String value = decode(valueStart, valueEnd, escaped);
+                if (header) {
+                    headerFields.add(value);
+                } else if (column == cardNumberColumn) {
+                    card = value;
+                } else if (column == merchantTransactionIdColumn) {
+                    merchant = value;
+                } else {
+                    rowTenant = value;
+                }
+            }
+
+            if (p == windowLimit) {
+                break;
+            }
+            byte terminator = window.get(p++);
+            if (terminator == ',') {
+                column++;
+                continue;
+            }
+            if (terminator == '\r' && p < windowLimit && window.get(p) == '\n') {
+                p++;
+            } else if (terminator == '\r' && p == windowLimit && !lastWindow) {
+                position = recordStart;
+                return REMAP;
+            }
+            break;
+        }
+        if (!header && (column < cardNumberColumn || column < merchantTransactionIdColumn
+            || column < tenantColumn)) {
+            throw new IOException(file + ": row " + (row + 1) + " has " + (column + 1) + " columns, fewer than its header.");
+        }
+        cardNumber = card;
+        merchantTransactionId = merchant;
+        tenant = rowTenant;
+        position = windowStart + p;
+        return RECORD;
+    }
+
+    /**
+     * @return the trimmed UTF-8 value of {@code [from, to)} in the window, with {@code ""}
+     *         collapsed if {@code escaped}
+     */
+    private String decode(int from, int to, boolean escaped) {
+        // Trimming bytes up to ' ' matches String.trim(): no UTF-8 multi-byte sequence contains them.
+        while (from < to && (window.get(from) & 0xff) <= ' ') {
+            from++;
+        }
+        while (to > from && (window.get(to - 1) & 0xff) <= ' ') {
+            to--;
+        }
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        if (!escaped) {
+            window.get(from, scratch, 0, length);
+        } else {
+            length = 0;
+            for (int i = from; i < to; i++) {
+                byte b = window.get(i);
+                scratch[length++] = b;
+                if (b == '"') {
+                    i++;
+                }
+            }
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        windowLimit = (int) Math.min(windowSize, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLimit);
+        position = start;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a periodic progress line from {@link BatchMetrics} to stderr and optionally serves the
+ * live metrics on a loopback port: {@code /metrics} in Prometheus text format and
+ * {@code /metrics.json} as JSON.
+ */
+final class MetricsReporter implements Closeable {
+    private final BatchMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final HttpServer server;
+    private long lastRows;
+    private long lastNanos = System.nanoTime();
+
+    private MetricsReporter(BatchMetrics metrics, ScheduledExecutorService scheduler, HttpServer server) {
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.server = server;
+    }
+
+    /**
+     * @param progressIntervalSeconds seconds between progress lines; 0 disables them
+     * @param port                    loopback port for the metrics endpoint; 0 disables it
+     */
+    static MetricsReporter start(BatchMetrics metrics, ObjectMapper mapper, int progressIntervalSeconds, int port)
+        throws IOException {
+        if (progressIntervalSeconds < 0 || port < 0) {
+            throw new IllegalArgumentException("Progress interval and metrics port must not be negative.");
+        }
+        HttpServer server = null;
+        if (port > 0) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4", metrics.toPrometheus()));
+            server.createContext("/metrics.json", exchange ->
+                respond(exchange, "application/json", mapper.writeValueAsString(metrics.toJson(mapper))));
+            server.start();
+            System.err.println("Serving metrics on http://localhost:" + port + "/metrics and /metrics.json.");
+        }
+
+        ScheduledExecutorService scheduler = null;
+        if (progressIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "progress-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        MetricsReporter reporter = new MetricsReporter(metrics, scheduler, server);
+        if (scheduler != null) {
+            scheduler.scheduleAtFixedRate(reporter::printProgress, progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        }
+        return reporter;
+    }
+
+    private void printProgress() {
+        long now = System.nanoTime();
+        long rows = metrics.rowsDone();
+        double rate = (rows - lastRows) / ((now - lastNanos) / 1e9);
+        lastRows = rows;
+        lastNanos = now;
+        System.err.println(metrics.progressLine(rate));
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        try (exchange) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for {@code POST /checkout} and {@code POST /checkout/confirmations} for load
+ * testing. It checks the shape of the OAuth 1.0a header (including the body hash), encrypts the
+ * template payload with {@link PayloadEncryptor} for every checkout, answers confirmations with
+ * 204, and can inject latency, 500 errors and 429 throttling on both.
+ */
+final class MockCheckoutServer implements Closeable {
+    private static final Pattern OAUTH_PARAM = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final List<String> REQUIRED_OAUTH_PARAMS = List.of(
+        "oauth_consumer_key", "oauth_nonce", "oauth_timestamp", "oauth_signature_method",
+        "oauth_version", "oauth_body_hash", "oauth_signature");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Settings settings;
+    private final PayloadEncryptor encryptor;
+    private final String payloadTemplate;
+    private final RateLimiter throttle;
+    private final ExecutorService executor;
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+
+    private MockCheckoutServer(Settings settings) throws Exception {
+        this.settings = settings;
+        this.encryptor = new PayloadEncryptor(settings.certificatePath().toString());
+        this.payloadTemplate = Files.readString(settings.payloadTemplate());
+        this.throttle = RateLimiter.of(settings.maxRequestsPerSecond(), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(settings.port()), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/checkout", this::handleCheckout);
+        this.server.createContext("/checkout/confirmations", this::handleConfirmation);
+    }
+
+    static MockCheckoutServer start(Settings settings) throws Exception {
+        MockCheckoutServer mock = new MockCheckoutServer(settings);
+        mock.server.start();
+        return mock;
+    }
+
+    /**
+     * @return base URL to configure as {@code baseUrl}, without the {@code /checkout} suffix
+     */
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleCheckout(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = admit(exchange);
+            if (request == null) {
+                return;
+            }
+            String merchantTransactionId = request.path("checkoutReference").path("data").path("merchantTransactionId").asText("");
+            if (merchantTransactionId.isEmpty()) {
+                respond(exchange, 400, error("INVALID_ARGUMENT", "checkoutReference.data.merchantTransactionId is required."));
+                return;
+            }
+            if (injectFailure(exchange)) {
+                return;
+            }
+
+            String encryptedValue = mapper.readTree(encryptor.encrypt(payloadTemplate)).path("encryptedValue").asText();
+            ObjectNode response = mapper.createObjectNode();
+            response.put("merchantTransactionId", merchantTransactionId);
+            response.put("encryptedPayload", encryptedValue);
+            response.put("correlationId", UUID.randomUUID().toString());
+            respond(exchange, 200, response);
+        } catch (Exception ex) {
+            System.err.println("Mock checkout failed: " + ex.getMessage());
+        }
+    }
+
+    private void handleConfirmation(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = admit(exchange);
+            if (request == null) {
+                return;
+            }
+            if (request.path("correlationId").asText("").isEmpty() || !request.path("confirmationData").isObject()) {
+                respond(exchange, 400, error("INVALID_ARGUMENT", "correlationId and confirmationData are required."));
+                return;
+            }
+            if (injectFailure(exchange)) {
+                return;
+            }
+            exchange.sendResponseHeaders(204, -1);
+        } catch (Exception ex) {
+            System.err.println("Mock confirmation failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Counts the request and checks its method and OAuth header.
+     *
+     * @return the JSON request body, or {@code null} if an error response was sent
+     */
+    private JsonNode admit(HttpExchange exchange) throws IOException, NoSuchAlgorithmException {
+        requests.incrementAndGet();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("METHOD_NOT_ALLOWED", "Only POST is supported."));
+            return null;
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+
+        String oauthProblem = settings.validateOAuth()
+            ? oauthProblem(exchange.getRequestHeaders().getFirst("Authorization"), body)
+            : null;
+        if (oauthProblem != null) {
+            respond(exchange, 401, error("UNAUTHORIZED", oauthProblem));
+            return null;
+        }
+        return mapper.readTree(body);
+    }
+
+    /**
+     * Waits the configured latency, then answers with an injected 429 or 500 if one is due.
+     *
+     * @return {@code true} if an error response was sent
+     */
+    private boolean injectFailure(HttpExchange exchange) throws IOException {
+        sleep(settings.latency().sampleMillis(ThreadLocalRandom.current()));
+        if (!throttle.tryAcquire() || ThreadLocalRandom.current().nextDouble() < settings.throttleRate()) {
+            exchange.getResponseHeaders().add("Retry-After", Integer.toString(settings.retryAfterSeconds()));
+            respond(exchange, 429, error("TOO_MANY_REQUESTS", "Rate limit exceeded."));
+            return true;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < settings.errorRate()) {
+            respond(exchange, 500, error("INTERNAL_SERVER_ERROR", "Injected failure."));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return a description of what is wrong with the header, or {@code null} if it looks like a
+     *         well-formed RSA-SHA256 OAuth 1.0a header whose body hash matches {@code body}
+     */
+    private static String oauthProblem(String header, byte[] body) throws NoSuchAlgorithmException {
+        if (header == null || !header.startsWith("OAuth ")) {
+            return "Missing OAuth Authorization header.";
+        }
+        Map<String, String> params = new HashMap<>();
+        Matcher matcher = OAUTH_PARAM.matcher(header);
+        while (matcher.find()) {
+            // Values may or may not be percent-encoded; a literal '+' is base64, not a space.
+            params.put(matcher.group(1), URLDecoder.decode(matcher.group(2).replace("+", "%2B"), StandardCharsets.UTF_8));
+        }
+        for (String name : REQUIRED_OAUTH_PARAMS) {
+            if (params.getOrDefault(name, "").isEmpty()) {
+                return "OAuth header is missing " + name + ".";
+            }
+        }
+        if (!"RSA-SHA256".equals(params.get("oauth_signature_method"))) {
+            return "Unsupported oauth_signature_method " + params.get("oauth_signature_method") + ".";
+        }
+        String bodyHash = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+        if (!bodyHash.equals(params.get("oauth_body_hash"))) {
+            return "oauth_body_hash does not match the request body.";
+        }
+        return null;
+    }
+
+    private ObjectNode error(String reason, String description) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("status", reason);
+        error.putObject("Errors").putArray("Error").addObject()
+            .put("Source", "mock-checkout")
+            .put("ReasonCode", reason)
+            .put("Description", description)
+            .put("Recoverable", false);
+        return error;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    enum LatencyDistribution {
+        FIXED,
+        UNIFORM,
+        LOGNORMAL
+    }
+
+    /**
+     * @param millis median response time
+     * @param spread {@code UNIFORM}: maximum deviation in ms either side; {@code LOGNORMAL}: sigma
+     */
+    record Latency(LatencyDistribution distribution, double millis, double spread) {
+        long sampleMillis(Random random) {
+            double sample = switch (distribution) {
+                case FIXED -> millis;
+                case UNIFORM -> millis + (random.nextDouble() * 2 - 1) * spread;
+                case LOGNORMAL -> millis * Math.exp(spread * random.nextGaussian());
+            };
+            return Math.max(0, Math.round(sample));
+        }
+    }
+
+    record Settings(
+        int port,
+        Path certificatePath,
+        Path payloadTemplate,
+        Latency latency,
+        double errorRate,
+        double throttleRate,
+        double maxRequestsPerSecond,
+        int retryAfterSeconds,
+        boolean validateOAuth
+    ) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.clientdecrypt;
+
+import picocli.CommandLine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+@CommandLine.Command(
+    name = "mock-checkout-server",
+    mixinStandardHelpOptions = true,
+    description = "Serve a local POST /checkout that returns encrypted demo payloads, and POST /checkout/confirmations, for load testing."
+)
+public final class MockCheckoutServerApp implements Callable<Integer> {
+    @CommandLine.Option(names = "--port", defaultValue = "8089", description = "Port to listen on (default: ${DEFAULT-VALUE}).")
+    private int port;
+
+    @CommandLine.Mixin
+    private MockServerOptions options = new MockServerOptions();
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new MockCheckoutServerApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        MockCheckoutServer server = MockCheckoutServer.start(options.settings(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.err.println("Mock checkout listening on " + server.baseUrl() + "/checkout and /checkout/confirmations; set baseUrl=" + server.baseUrl() + ".");
+        new CountDownLatch(1).await();
+        return 0;
+    }
+}
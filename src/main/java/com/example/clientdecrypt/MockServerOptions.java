@@ -0,0 +1,99 @@
+package com.example.clientdecrypt;
+
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+/**
+ * Command-line options for {@link MockCheckoutServer}, shared by {@code mock-checkout-server}
+ * and the embedded mock of {@code load-test}.
+ */
+final class MockServerOptions {
+    @CommandLine.Option(
+        names = "--mock-certificate",
+        defaultValue = "config/keys/demo-encryption.crt",
+        description = "Certificate used to encrypt mock responses (default: ${DEFAULT-VALUE})."
+    )
+    Path certificatePath;
+
+    @CommandLine.Option(
+        names = "--mock-payload",
+        defaultValue = "examples/chekcoutDecryptedCardResponse.json",
+        description = "Decrypted payload returned for every transaction (default: ${DEFAULT-VALUE})."
+    )
+    Path payloadTemplate;
+
+    @CommandLine.Option(
+        names = "--latency",
+        defaultValue = "FIXED",
+        description = "Response latency distribution: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})."
+    )
+    MockCheckoutServer.LatencyDistribution latencyDistribution;
+
+    @CommandLine.Option(
+        names = "--latency-ms",
+        defaultValue = "0",
+        description = "Median response latency in milliseconds (default: ${DEFAULT-VALUE})."
+    )
+    double latencyMillis;
+
+    @CommandLine.Option(
+        names = "--latency-spread",
+        defaultValue = "0",
+        description = "UNIFORM: +/- milliseconds around the median; LOGNORMAL: sigma, e.g. 0.5 (default: ${DEFAULT-VALUE})."
+    )
+    double latencySpread;
+
+    @CommandLine.Option(
+        names = "--error-rate",
+        defaultValue = "0",
+        description = "Fraction of requests answered with 500 (default: ${DEFAULT-VALUE})."
+    )
+    double errorRate;
+
+    @CommandLine.Option(
+        names = "--throttle-rate",
+        defaultValue = "0",
+        description = "Fraction of requests answered with 429 (default: ${DEFAULT-VALUE})."
+    )
+    double throttleRate;
+
+    @CommandLine.Option(
+        names = "--max-rps",
+        defaultValue = "0",
+        description = "Answer 429 once this many requests per second are exceeded; 0 disables (default: ${DEFAULT-VALUE})."
+    )
+    double maxRequestsPerSecond;
+
+    @CommandLine.Option(
+        names = "--retry-after-seconds",
+        defaultValue = "1",
+        description = "Retry-After value sent with 429 responses (default: ${DEFAULT-VALUE})."
+    )
+    int retryAfterSeconds;
+
+    @CommandLine.Option(
+        names = "--skip-oauth-check",
+        description = "Accept requests without a well-formed OAuth 1.0a Authorization header."
+    )
+    boolean skipOAuthCheck;
+
+    MockCheckoutServer.Settings settings(int port) {
+        if (errorRate < 0 || errorRate > 1 || throttleRate < 0 || throttleRate > 1) {
+            throw new IllegalArgumentException("--error-rate and --throttle-rate must be between 0 and 1.");
+        }
+        if (latencyMillis < 0 || latencySpread < 0) {
+            throw new IllegalArgumentException("--latency-ms and --latency-spread must not be negative.");
+        }
+        return new MockCheckoutServer.Settings(
+            port,
+            certificatePath,
+            payloadTemplate,
+            new MockCheckoutServer.Latency(latencyDistribution, latencyMillis, latencySpread),
+            errorRate,
+            throttleRate,
+            maxRequestsPerSecond,
+            retryAfterSeconds,
+            !skipOAuthCheck);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.clientdecrypt;
+
+import com.mastercard.developer.oauth.OAuth;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+
+/**
+ * Signs through the Mastercard oauth1-signer library, which hashes, builds the base string
+ * and creates a new {@code Signature} on every call. Kept as the reference implementation
+ * ({@code oauthSigner=library}).
+ */
+final class OAuthLibrarySigner implements RequestSigner {
+    private final String consumerKey;
+    private final PrivateKey signingKey;
+
+    OAuthLibrarySigner(String consumerKey, PrivateKey signingKey) {
+        this.consumerKey = consumerKey;
+        this.signingKey = signingKey;
+    }
+
+    @Override
+    public String authorizationHeader(URI uri, String method, byte[] body) {
+        return OAuth.getAuthorizationHeader(
+            uri,
+            method,
+            new String(body, StandardCharsets.UTF_8),
+            StandardCharsets.UTF_8,
+            consumerKey,
+            signingKey);
+    }
+}
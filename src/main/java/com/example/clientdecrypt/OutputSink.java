@@ -0,0 +1,137 @@
+package com.example.clientdecrypt;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Destination for decrypted rows in the {@link DecryptedRows#HEADER} schema. {@link #flush()}
+ * pushes every row written so far to the underlying stream, so a {@link CheckpointJournal} can
+ * record the output length right after it and a resumed run can append from there.
+ */
+interface OutputSink extends Flushable, Closeable {
+    String CSV = "csv";
+    String JSONL = "jsonl";
+    String ARROW = "arrow";
+
+    void write(Object[] row) throws IOException;
+
+    /**
+     * @param outputStream buffered stream the sink takes ownership of
+     * @param append       {@code true} when continuing an existing output, which already has its
+     *                     header or schema
+     */
+    static OutputSink open(String format, OutputStream outputStream, boolean append) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvOutputSink(outputStream, append);
+            case JSONL -> new JsonLinesOutputSink(outputStream);
+            case ARROW -> new ArrowStreamOutputSink(outputStream, append);
+            default -> throw new IllegalArgumentException("Unsupported output format: " + format);
+        };
+    }
+
+    /**
+     * @return {@code explicitFormat} if given, otherwise the format implied by the extension of
+     *         {@code location} before any {@code .gz}: {@code .jsonl}/{@code .ndjson} are JSONL,
+     *         {@code .arrow}/{@code .arrows} are Arrow and anything else is CSV
+     */
+    static String format(String explicitFormat, String location) {
+        if (explicitFormat != null) {
+            String format = explicitFormat.toLowerCase(Locale.ROOT);
+            if (!CSV.equals(format) && !JSONL.equals(format) && !ARROW.equals(format)) {
+                throw new IllegalArgumentException("Unsupported --output-format: " + explicitFormat);
+            }
+            return format;
+        }
+        String name = location.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        if (name.endsWith(".arrow") || name.endsWith(".arrows")) {
+            return ARROW;
+        }
+        return CSV;
+    }
+
+    /**
+     * @return the file extension, without the dot, used for outputs named after their input
+     */
+    static String extension(String format) {
+        return ARROW.equals(format) ? "arrows" : format;
+    }
+
+    /**
+     * Writes complete outputs of one format as a single output: the CSV header or Arrow schema of
+     * every part after the first is skipped, as is the Arrow end-of-stream marker of every part
+     * before the last.
+     */
+    static void concatenate(String format, List<Path> parts, OutputStream outputStream) throws IOException {
+        for (int i = 0; i < parts.size(); i++) {
+            Path part = parts.get(i);
+            long size = Files.size(part);
+            long start = i == 0 ? 0 : headerLength(format, part);
+            long end = ARROW.equals(format) && i < parts.size() - 1 ? size - ArrowStreamOutputSink.EOS_LENGTH : size;
+            if (start > end) {
+                throw new IOException("Output part " + part + " is truncated.");
+            }
+            try (InputStream inputStream = Files.newInputStream(part)) {
+                inputStream.skipNBytes(start);
+                long remaining = end - start;
+                byte[] buffer = new byte[64 * 1024];
+                while (remaining > 0) {
+                    int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("Output part " + part + " changed while being merged.");
+                    }
+                    outputStream.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * @return bytes before the first row: the CSV header line or the Arrow schema message
+     */
+    private static long headerLength(String format, Path part) throws IOException {
+        return switch (format) {
+            case CSV -> {
+                try (InputStream inputStream = Files.newInputStream(part)) {
+                    long length = 0;
+                    int b;
+                    while ((b = inputStream.read()) != -1) {
+                        length++;
+                        if (b == '\n') {
+                            yield length;
+                        }
+                    }
+                    throw new IOException("Output part " + part + " has no header line.");
+                }
+            }
+            case JSONL -> 0;
+            case ARROW -> {
+                try (InputStream inputStream = Files.newInputStream(part)) {
+                    // Continuation marker, then the metadata length; the schema message has no body.
+                    ByteBuffer prefix = ByteBuffer.wrap(inputStream.readNBytes(8)).order(ByteOrder.LITTLE_ENDIAN);
+                    if (prefix.limit() < 8 || prefix.getInt(0) != -1) {
+                        throw new IOException("Output part " + part + " is not an Arrow IPC stream.");
+                    }
+                    yield 8L + prefix.getInt(4);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported output format: " + format);
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.clientdecrypt;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mastercard.developer.encryption.JweConfig;
@@ -9,74 +10,142 @@ import com.mastercard.developer.encryption.JweEncryption;
 import com.mastercard.developer.utils.EncryptionUtils;
 
 import java.io.IOException;
-import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 final class PayloadDecryptor {
+    private static final String[] CARD_FIELDS = {
+        "primaryAccountNumber", "panExpirationMonth", "panExpirationYear", "cardholderFullName"};
+    private static final String[] TOKEN_FIELDS = {
+        "paymentToken", "tokenExpirationMonth", "tokenExpirationYear", "paymentAccountReference"};
+    private static final String[] DYNAMIC_DATA_FIELDS = {
+        "dynamicDataType", "dynamicDataValue", "dynamicDataExpiration"};
+
     private final ObjectMapper mapper;
-    private final JweConfig jweConfig;
+    private final Certificate encryptionCertificate;
+    private final JweDecrypter jweDecrypter;
+    // Library configs per decryption key; keys dropped by a reload are collected with their config.
+    private final Map<PrivateKey, JweConfig> jweConfigs = Collections.synchronizedMap(new WeakHashMap<>());
 
     PayloadDecryptor(ObjectMapper mapper, AppConfig config) throws Exception {
         this.mapper = mapper;
-        PrivateKey decryptionKey = loadDecryptionKey(config);
-        JweConfigBuilder builder = JweConfigBuilder.aJweEncryptionConfig()
-            .withDecryptionKey(decryptionKey)
-            .withDecryptionPath("$.encryptedValue", "$");
+        this.jweDecrypter = new JweDecrypter(mapper, DecryptionKeys.load(config), config.contentKeyCacheSize());
+        this.encryptionCertificate = config.encryptionCertificatePath() != null
+            ? EncryptionUtils.loadEncryptionCertificate(config.encryptionCertificatePath())
+            : null;
+    }
 
-        if (config.encryptionCertificatePath() != null) {
-            Certificate encryptionCertificate = EncryptionUtils.loadEncryptionCertificate(
-                config.encryptionCertificatePath());
-            builder.withEncryptionCertificate(encryptionCertificate);
+    DecryptedResult decrypt(String encryptedPayload) throws IOException {
+        byte[] decryptedJson = jweDecrypter.decrypt(encryptedPayload);
+        if (decryptedJson == null) {
+            decryptedJson = decryptWithLibrary(encryptedPayload).getBytes(StandardCharsets.UTF_8);
         }
-        this.jweConfig = builder.build();
+        return extract(decryptedJson);
     }
 
-    DecryptedResult decrypt(String encryptedPayload) throws IOException {
-        ObjectNode wrapper = mapper.createObjectNode();
-        wrapper.put("encryptedValue", encryptedPayload);
-        String decryptedJson;
-        try {
-            decryptedJson = JweEncryption.decryptPayload(wrapper.toString(), jweConfig);
-        } catch (com.mastercard.developer.encryption.EncryptionException ex) {
-            throw new IOException("Failed to decrypt payload", ex);
+    /**
+     * Pulls the eleven output fields from the decrypted JSON with a streaming parser, skipping
+     * every other subtree (addresses, 3DS data, ...) without building a tree.
+     */
+    private DecryptedResult extract(byte[] decryptedJson) throws IOException {
+        String[] card = new String[CARD_FIELDS.length];
+        String[] token = new String[TOKEN_FIELDS.length];
+        String[] dynamicData = new String[DYNAMIC_DATA_FIELDS.length];
+
+        try (JsonParser parser = mapper.getFactory().createParser(decryptedJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Decrypted payload is not a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String section = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT && "card".equals(section)) {
+                    readFields(parser, CARD_FIELDS, card);
+                } else if (value == JsonToken.START_OBJECT && "token".equals(section)) {
+                    readFields(parser, TOKEN_FIELDS, token);
+                } else if (value == JsonToken.START_OBJECT && "dynamicData".equals(section)) {
+                    readFields(parser, DYNAMIC_DATA_FIELDS, dynamicData);
+                } else {
+                    parser.skipChildren();
+                }
+            }
         }
-        JsonNode root = mapper.readTree(decryptedJson);
-        JsonNode card = root.path("card");
-        JsonNode token = root.path("token");
-        JsonNode dynamicData = root.path("dynamicData");
 
         return new DecryptedResult(
-            textOrNull(card.path("primaryAccountNumber")),
-            textOrNull(card.path("panExpirationMonth")),
-            textOrNull(card.path("panExpirationYear")),
-            textOrNull(card.path("cardholderFullName")),
-            textOrNull(token.path("paymentToken")),
-            textOrNull(token.path("tokenExpirationMonth")),
-            textOrNull(token.path("tokenExpirationYear")),
-            textOrNull(token.path("paymentAccountReference")),
-            textOrNull(dynamicData.path("dynamicDataType")),
-            textOrNull(dynamicData.path("dynamicDataValue")),
-            textOrNull(dynamicData.path("dynamicDataExpiration"))
+            card[0],
+            card[1],
+            card[2],
+            card[3],
+            token[0],
+            token[1],
+            token[2],
+            token[3],
+            dynamicData[0],
+            dynamicData[1],
+            dynamicData[2]
         );
     }
 
-    private static String textOrNull(JsonNode node) {
-        if (node == null || node.isMissingNode() || node.isNull()) {
-            return null;
+    /**
+     * Reads the scalar members of the current object whose names appear in {@code names} into
+     * the matching slot of {@code values}; nested values count as absent, as do blank strings.
+     */
+    private static void readFields(JsonParser parser, String[] names, String[] values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            int index = indexOf(names, name);
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                if (index >= 0) {
+                    values[index] = null;
+                }
+            } else if (index >= 0) {
+                String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                values[index] = text == null || text.isBlank() ? null : text;
+            }
+        }
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fallback for JWE algorithms that {@link JweDecrypter} does not implement.
+     */
+    private String decryptWithLibrary(String encryptedPayload) throws IOException {
+        ObjectNode wrapper = mapper.createObjectNode();
+        wrapper.put("encryptedValue", encryptedPayload);
+        try {
+            return JweEncryption.decryptPayload(wrapper.toString(), jweConfig(jweDecrypter.keyFor(encryptedPayload)));
+        } catch (com.mastercard.developer.encryption.EncryptionException ex) {
+            throw new IOException("Failed to decrypt payload", ex);
         }
-        String value = node.asText();
-        return value == null || value.isBlank() ? null : value;
     }
 
-    private static PrivateKey loadDecryptionKey(AppConfig config) throws Exception {
-        if (config.decryptionKeyPath() != null) {
-            return EncryptionUtils.loadDecryptionKey(
-                config.decryptionKeyPath(),
-                config.decryptionKeyAlias(),
-                config.decryptionKeyPassword());
+    private JweConfig jweConfig(PrivateKey decryptionKey) throws com.mastercard.developer.encryption.EncryptionException {
+        JweConfig jweConfig = jweConfigs.get(decryptionKey);
+        if (jweConfig == null) {
+            JweConfigBuilder builder = JweConfigBuilder.aJweEncryptionConfig()
+                .withDecryptionKey(decryptionKey)
+                .withDecryptionPath("$.encryptedValue", "$");
+            if (encryptionCertificate != null) {
+                builder.withEncryptionCertificate(encryptionCertificate);
+            }
+            jweConfig = builder.build();
+            jweConfigs.put(decryptionKey, jweConfig);
         }
-        return EncryptionUtils.loadDecryptionKey(config.decryptionKeyPlainPath());
+        return jweConfig;
     }
 
     record DecryptedResult(
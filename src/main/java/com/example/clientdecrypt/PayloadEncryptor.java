@@ -11,11 +11,14 @@ final class PayloadEncryptor {
     private final JweConfig jweConfig;
 
     PayloadEncryptor(AppConfig config) throws Exception {
-        if (config.encryptionCertificatePath() == null) {
+        this(config.encryptionCertificatePath());
+    }
+
+    PayloadEncryptor(String encryptionCertificatePath) throws Exception {
+        if (encryptionCertificatePath == null) {
             throw new IllegalArgumentException("Missing encryptionCertificatePath for payload encryption.");
         }
-        Certificate encryptionCertificate = EncryptionUtils.loadEncryptionCertificate(
-            config.encryptionCertificatePath());
+        Certificate encryptionCertificate = EncryptionUtils.loadEncryptionCertificate(encryptionCertificatePath);
         this.jweConfig = JweConfigBuilder.aJweEncryptionConfig()
             .withEncryptionCertificate(encryptionCertificate)
             .withEncryptionPath("$", "$")
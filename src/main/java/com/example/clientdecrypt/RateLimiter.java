@@ -0,0 +1,84 @@
+package com.example.clientdecrypt;
+
+/**
+ * Token-bucket rate limiter. Callers reserve a permit and are told how long to wait before
+ * using it, so the limiter works for both blocking and {@code CompletableFuture} callers
+ * without parking a thread inside the limiter.
+ */
+final class RateLimiter {
+    private static final RateLimiter UNLIMITED = new RateLimiter(0, 0);
+
+    private final double permitsPerNano;
+    private final double maxTokens;
+    private double tokens;
+    private long lastRefillNanos;
+
+    private RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.maxTokens = Math.max(1, burst);
+        this.tokens = maxTokens;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * @param permitsPerSecond sustained rate; zero or negative disables limiting
+     * @param burst            bucket capacity; non-positive values default to one second of permits
+     */
+    static RateLimiter of(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            return UNLIMITED;
+        }
+        int capacity = burst > 0 ? burst : (int) Math.ceil(permitsPerSecond);
+        return new RateLimiter(permitsPerSecond, capacity);
+    }
+
+    /**
+     * Takes one permit, going into debt if the bucket is empty.
+     *
+     * @return nanoseconds the caller must wait before sending; zero if it may send now
+     */
+    synchronized long reserve() {
+        if (this == UNLIMITED) {
+            return 0;
+        }
+        refill();
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerNano);
+    }
+
+    /**
+     * Takes one permit only if one is available right now; never goes into debt.
+     */
+    synchronized boolean tryAcquire() {
+        if (this == UNLIMITED) {
+            return true;
+        }
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * @return {@code true} if permits have been reserved beyond the tokens available now, so
+     *         another reservation would have to wait
+     */
+    synchronized boolean inDebt() {
+        if (this == UNLIMITED) {
+            return false;
+        }
+        refill();
+        return tokens < 0;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxTokens, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.clientdecrypt;
+
+import com.mastercard.developer.utils.AuthenticationUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.PrivateKey;
+
+/**
+ * Produces the OAuth 1.0a {@code Authorization} header for an API request.
+ */
+interface RequestSigner {
+    /**
+     * @param body the exact bytes that will be sent as the request body (UTF-8)
+     */
+    String authorizationHeader(URI uri, String method, byte[] body) throws IOException;
+
+    /**
+     * Loads the signing key and returns the signer selected by {@code oauthSigner}.
+     */
+    static RequestSigner from(AppConfig config) throws Exception {
+        PrivateKey signingKey = AuthenticationUtils.loadSigningKey(
+            config.signingKeyPath(),
+            config.signingKeyAlias(),
+            config.signingKeyPassword());
+        return switch (config.oauthSigner()) {
+            case "cached" -> new CachedOAuthSigner(config.consumerKey(), signingKey);
+            default -> new OAuthLibrarySigner(config.consumerKey(), signingKey);
+        };
+    }
+}
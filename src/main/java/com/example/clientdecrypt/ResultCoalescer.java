@@ -0,0 +1,111 @@
+package com.example.clientdecrypt;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for checkout + decrypt keyed by merchantTransactionId: while one lookup for an id is
+ * in flight, further requests for the same id share its result instead of calling the API again.
+ * With a non-zero capacity, successful results are also kept for {@code ttlSeconds} so later
+ * duplicates skip both the API call and the RSA decrypt. Failures are never cached.
+ *
+ * <p>In-flight lookups and completed results are kept apart, so {@code capacity} bounds only the
+ * completed results, which are evicted oldest first, and a slow lookup never holds back eviction.
+ * Completed results all live for the same TTL, so they also expire oldest first; expired ones are
+ * dropped on every lookup whether or not the cache is full.
+ */
+final class ResultCoalescer {
+    private final int capacity;
+    private final long ttlNanos;
+    private final Map<String, CompletableFuture<PayloadDecryptor.DecryptedResult>> inFlight = new HashMap<>();
+    // In completion order, which is also expiry order.
+    private final Map<String, Entry> completed;
+
+    /**
+     * @param capacity   maximum number of completed results to keep; 0 keeps none (in-flight coalescing only)
+     * @param ttlSeconds how long a completed result may be reused
+     */
+    ResultCoalescer(int capacity, long ttlSeconds) {
+        if (capacity < 0 || ttlSeconds < 0) {
+            throw new IllegalArgumentException("Result cache size and TTL must not be negative.");
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.completed = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResultCoalescer.this.capacity;
+            }
+        };
+    }
+
+    static ResultCoalescer from(AppConfig config) {
+        return new ResultCoalescer(config.resultCacheSize(), config.resultCacheTtlSeconds());
+    }
+
+    /**
+     * Returns the in-flight or cached result for {@code key}, or calls {@code loader} (on the calling
+     * thread) and shares its result with everyone who asks for the same key meanwhile.
+     *
+     * <p>The returned future may be shared with other callers: derive from it, never cancel it.
+     */
+    Lookup lookup(String key, Supplier<CompletableFuture<PayloadDecryptor.DecryptedResult>> loader) {
+        CompletableFuture<PayloadDecryptor.DecryptedResult> promise;
+        synchronized (inFlight) {
+            removeExpired(System.nanoTime());
+            CompletableFuture<PayloadDecryptor.DecryptedResult> pending = inFlight.get(key);
+            if (pending != null) {
+                return new Lookup(pending, true);
+            }
+            Entry cached = completed.get(key);
+            if (cached != null) {
+                return new Lookup(cached.result(), true);
+            }
+            promise = new CompletableFuture<>();
+            inFlight.put(key, promise);
+        }
+
+        CompletableFuture<PayloadDecryptor.DecryptedResult> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException ex) {
+            loaded = CompletableFuture.failedFuture(ex);
+        }
+        loaded.whenComplete((result, ex) -> {
+            synchronized (inFlight) {
+                if (inFlight.remove(key, promise) && ex == null && capacity > 0 && ttlNanos > 0) {
+                    completed.put(key, new Entry(promise, System.nanoTime() + ttlNanos));
+                }
+            }
+            if (ex != null) {
+                promise.completeExceptionally(ex);
+            } else {
+                promise.complete(result);
+            }
+        });
+        return new Lookup(promise, false);
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Entry> oldestFirst = completed.values().iterator();
+        while (oldestFirst.hasNext() && oldestFirst.next().expired(now)) {
+            oldestFirst.remove();
+        }
+    }
+
+    /**
+     * @param shared {@code true} if the result came from another caller's lookup or the cache
+     */
+    record Lookup(CompletableFuture<PayloadDecryptor.DecryptedResult> result, boolean shared) {
+    }
+
+    private record Entry(CompletableFuture<PayloadDecryptor.DecryptedResult> result, long expiresAtNanos) {
+        boolean expired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+}
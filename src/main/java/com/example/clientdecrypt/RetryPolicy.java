@@ -0,0 +1,108 @@
+package com.example.clientdecrypt;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which checkout failures are worth retrying and how long to back off:
+ * exponential backoff with full jitter, overridden by a server {@code Retry-After} of at most
+ * {@code retryMaxDelayMillis}.
+ */
+final class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    static RetryPolicy from(AppConfig config) {
+        return new RetryPolicy(config.maxAttempts(), config.retryBaseDelayMillis(), config.retryMaxDelayMillis());
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return whether {@code failure} is a retryable status, or a timeout or other transient I/O
+     *     failure as {@link ErrorCategory} classifies it (refused or reset connections, GOAWAY)
+     */
+    boolean isRetryable(Throwable failure) {
+        if (failure instanceof CheckoutException checkoutException) {
+            return isRetryableStatus(checkoutException.statusCode());
+        }
+        ErrorCategory category = ErrorCategory.of(failure);
+        return category == ErrorCategory.TIMEOUT || category == ErrorCategory.CONNECTION;
+    }
+
+    /**
+     * Confirmations are not idempotent, so they are retried only when the API cannot have recorded
+     * them: the connection was never opened, or the API refused the call with 429, or with 503 and
+     * {@code Retry-After}. A timeout, a reset connection or another 5xx may follow a confirmation
+     * the API already stored.
+     */
+    boolean isRetryableConfirmation(Throwable failure) {
+        if (failure instanceof CheckoutException checkoutException) {
+            int status = checkoutException.statusCode();
+            return status == 429 || (status == 503 && checkoutException.retryAfter() != null);
+        }
+        return failure instanceof ConnectException || failure instanceof HttpConnectTimeoutException;
+    }
+
+    static boolean isThrottle(Throwable failure) {
+        return failure instanceof CheckoutException checkoutException
+            && (checkoutException.statusCode() == 429 || checkoutException.statusCode() == 503);
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1
+     */
+    Duration backoff(int attempt, Throwable failure) {
+        if (failure instanceof CheckoutException checkoutException && checkoutException.retryAfter() != null) {
+            // Capped: a long wait would hold the row and its permit, and a huge one overflows toNanos().
+            Duration maxDelay = Duration.ofMillis(maxDelayMillis);
+            return checkoutException.retryAfter().compareTo(maxDelay) > 0 ? maxDelay : checkoutException.retryAfter();
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Parses a {@code Retry-After} header given either as delta-seconds or as an HTTP date.
+     *
+     * @return the requested delay, or {@code null} if the value is absent or malformed
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds, try HTTP-date.
+        }
+        try {
+            Duration delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.clientdecrypt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Wraps {@link CheckoutClient} checkouts and confirmations with client-side rate limiting, retries with backoff for
+ * throttling and transient failures, and AIMD feedback into an {@link AdaptiveConcurrencyLimit}. Slow checkouts
+ * can also be hedged as the {@link HedgePolicy} allows. Confirmations are not idempotent: they are never hedged,
+ * and only retried as {@link RetryPolicy#isRetryableConfirmation} allows.
+ */
+final class RetryingCheckout {
+    private final CheckoutClient checkoutClient;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final BatchMetrics metrics;
+
+    RetryingCheckout(
+        CheckoutClient checkoutClient,
+        RateLimiter rateLimiter,
+        RetryPolicy retryPolicy,
+        HedgePolicy hedgePolicy,
+        AdaptiveConcurrencyLimit concurrencyLimit,
+        BatchMetrics metrics
+    ) {
+        this.checkoutClient = checkoutClient;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.concurrencyLimit = concurrencyLimit;
+        this.metrics = metrics;
+    }
+
+    AdaptiveConcurrencyLimit concurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    String checkoutEncryptedPayload(String merchantTransactionId) throws IOException, InterruptedException {
+        return checkoutEncryptedPayload(merchantTransactionId, null);
+    }
+
+    /**
+     * @param trace receives every attempt, or {@code null}
+     */
+    String checkoutEncryptedPayload(String merchantTransactionId, RowTrace trace) throws IOException, InterruptedException {
+        if (hedgePolicy.enabled()) {
+            // A blocking send cannot be raced against a hedge, so hedged checkouts always go async.
+            return await(checkoutEncryptedPayloadAsync(merchantTransactionId, trace));
+        }
+        for (int attempt = 1; ; attempt++) {
+            TimeUnit.NANOSECONDS.sleep(rateLimiter.reserve());
+            try {
+                String encryptedPayload = checkoutClient.checkoutEncryptedPayload(merchantTransactionId, trace);
+                concurrencyLimit.onSuccess();
+                return encryptedPayload;
+            } catch (IOException ex) {
+                if (!shouldRetry(ex, retryPolicy::isRetryable, attempt)) {
+                    throw ex;
+                }
+                Thread.sleep(retryPolicy.backoff(attempt, ex));
+            }
+        }
+    }
+
+    CompletableFuture<String> checkoutEncryptedPayloadAsync(String merchantTransactionId) {
+        return checkoutEncryptedPayloadAsync(merchantTransactionId, null);
+    }
+
+    /**
+     * @param trace receives every attempt, or {@code null}
+     */
+    CompletableFuture<String> checkoutEncryptedPayloadAsync(String merchantTransactionId, RowTrace trace) {
+        return attemptAsync(() -> hedgedCheckout(merchantTransactionId, trace), retryPolicy::isRetryable, 1);
+    }
+
+    /**
+     * {@link CheckoutClient#confirmAsync} with the same rate limit and concurrency feedback as
+     * checkouts, retried only on failures the API cannot have recorded the confirmation after.
+     */
+    CompletableFuture<Integer> confirmAsync(String merchantTransactionId, byte[] confirmation, RowTrace trace) {
+        return attemptAsync(() -> checkoutClient.confirmAsync(merchantTransactionId, confirmation, trace),
+            retryPolicy::isRetryableConfirmation, 1);
+    }
+
+    private <T> CompletableFuture<T> attemptAsync(
+        Supplier<CompletableFuture<T>> call, Predicate<Throwable> retryable, int attempt) {
+        long waitNanos = rateLimiter.reserve();
+        CompletableFuture<T> response = waitNanos > 0
+            ? after(waitNanos).thenCompose(ignored -> call.get())
+            : call.get();
+
+        return response.handle((result, ex) -> {
+            if (ex == null) {
+                concurrencyLimit.onSuccess();
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = unwrap(ex);
+            if (!shouldRetry(cause, retryable, attempt)) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+            Duration backoff = retryPolicy.backoff(attempt, cause);
+            return after(backoff.toNanos()).thenCompose(ignored -> attemptAsync(call, retryable, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * One checkout attempt: the request, plus a hedged duplicate if the request is still unanswered
+     * after the {@link HedgePolicy} delay and the budget and rate limit allow one. The first success
+     * wins and the other response is discarded; the attempt fails only once every request sent has
+     * failed, with the first request's failure.
+     */
+    private CompletableFuture<String> hedgedCheckout(String merchantTransactionId, RowTrace trace) {
+        if (!hedgePolicy.enabled()) {
+            return checkoutClient.checkoutEncryptedPayloadAsync(merchantTransactionId, trace);
+        }
+        long delayNanos = hedgePolicy.nextDelayNanos();
+        HedgedRequests requests = new HedgedRequests(merchantTransactionId, trace);
+        requests.send(0);
+        if (delayNanos >= 0) {
+            after(delayNanos).thenRun(() -> {
+                if (!requests.result.isDone() && hedgePolicy.tryHedge() && rateLimiter.tryAcquire()) {
+                    requests.hedge();
+                }
+            });
+        }
+        return requests.result;
+    }
+
+    private boolean shouldRetry(Throwable failure, Predicate<Throwable> retryable, int attempt) {
+        if (RetryPolicy.isThrottle(failure)) {
+            concurrencyLimit.onThrottle();
+        }
+        boolean retry = attempt < retryPolicy.maxAttempts() && retryable.test(failure);
+        if (retry) {
+            metrics.recordRetry(BatchMetrics.outcome(failure));
+        }
+        return retry;
+    }
+
+    private static String await(CompletableFuture<String> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = unwrap(ex.getCause());
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static CompletableFuture<Void> after(long delayNanos) {
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        Throwable current = ex;
+        while ((current instanceof CompletionException || current instanceof UncheckedIOException)
+            && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * The primary request of one checkout attempt and its hedge. Each request records into a trace of
+     * its own, so the row's trace only receives the winner, or both once both have failed.
+     */
+    private final class HedgedRequests {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final String merchantTransactionId;
+        private final RowTrace trace;
+        private final RowTrace[] requestTraces = new RowTrace[2];
+        // Requests sent that have not failed; once it drops to 0 no hedge may be sent.
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile Throwable primaryFailure;
+
+        HedgedRequests(String merchantTransactionId, RowTrace trace) {
+            this.merchantTransactionId = merchantTransactionId;
+            this.trace = trace;
+        }
+
+        void hedge() {
+            int sent;
+            do {
+                sent = outstanding.get();
+                if (sent == 0) {
+                    return;
+                }
+            } while (!outstanding.compareAndSet(sent, sent + 1));
+            metrics.hedgeSent();
+            send(1);
+        }
+
+        /**
+         * @param index 0 for the primary request, 1 for the hedge
+         */
+        void send(int index) {
+            RowTrace requestTrace = trace == null ? null : new RowTrace(merchantTransactionId);
+            requestTraces[index] = requestTrace;
+            long started = System.nanoTime();
+            checkoutClient.checkoutEncryptedPayloadAsync(merchantTransactionId, requestTrace).whenComplete((payload, ex) -> {
+                if (ex == null) {
+                    // Only successes: fast throttling or server errors would pull the hedge delay down
+                    // and send more hedges exactly when the API is overloaded.
+                    hedgePolicy.recordLatency(started);
+                    if (settled.compareAndSet(false, true)) {
+                        if (trace != null) {
+                            trace.add(requestTrace);
+                        }
+                        if (index == 1) {
+                            metrics.hedgeWon();
+                        }
+                        result.complete(payload);
+                    }
+                    return;
+                }
+                if (index == 0) {
+                    primaryFailure = ex;
+                }
+                if (outstanding.decrementAndGet() == 0 && settled.compareAndSet(false, true)) {
+                    if (trace != null) {
+                        // The primary goes last so its status code is the one reported with its failure.
+                        if (requestTraces[1] != null) {
+                            trace.add(requestTraces[1]);
+                        }
+                        trace.add(requestTraces[0]);
+                    }
+                    result.completeExceptionally(primaryFailure != null ? primaryFailure : ex);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.clientdecrypt;
+
+/**
+ * What happened to one input row, collected along the checkout and decrypt path for the
+ * {@link AuditLog}. A trace is filled by one row's calls in sequence, possibly on different
+ * threads that hand over through future completion, and read once the row is done.
+ */
+final class RowTrace {
+    private final String merchantTransactionId;
+    private int attempts;
+    private long httpNanos;
+    private int statusCode;
+    private String correlationId;
+    private long decryptNanos;
+    private boolean shared;
+    private long rowNanos;
+    private ErrorCategory category;
+    private String error;
+    private long row;
+
+    RowTrace(String merchantTransactionId) {
+        this.merchantTransactionId = merchantTransactionId;
+    }
+
+    /**
+     * Records one HTTP attempt that started at {@code startNanos} and just ended.
+     */
+    void attempted(long startNanos) {
+        attempts++;
+        httpNanos += System.nanoTime() - startNanos;
+    }
+
+    void responded(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @param correlationId the {@code correlationId} of a successful response, or {@code null}
+     */
+    void correlationId(String correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * Adds what one of several concurrent requests for this row recorded in a trace of its own.
+     */
+    void add(RowTrace request) {
+        attempts += request.attempts;
+        httpNanos += request.httpNanos;
+        if (request.statusCode != 0) {
+            statusCode = request.statusCode;
+        }
+        if (request.correlationId != null) {
+            correlationId = request.correlationId;
+        }
+    }
+
+    void decrypted(long startNanos) {
+        decryptNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Marks a row served from another row's in-flight or cached result; it made no calls itself.
+     */
+    void shared() {
+        shared = true;
+    }
+
+    void finished(long startNanos) {
+        rowNanos = System.nanoTime() - startNanos;
+    }
+
+    void failed(ErrorCategory category, String error) {
+        this.category = category;
+        this.error = error;
+    }
+
+    /**
+     * @param cause the unwrapped cause; a shared row learns the status code from it
+     */
+    void failed(Throwable cause) {
+        failed(ErrorCategory.of(cause), cause.getMessage());
+        if (statusCode == 0 && cause instanceof CheckoutException checkoutException) {
+            statusCode = checkoutException.statusCode();
+        }
+    }
+
+    /**
+     * @param row the 1-based output row this trace is logged for
+     */
+    void logged(long row) {
+        this.row = row;
+    }
+
+    long row() {
+        return row;
+    }
+
+    String merchantTransactionId() {
+        return merchantTransactionId;
+    }
+
+    int attempts() {
+        return attempts;
+    }
+
+    long httpNanos() {
+        return httpNanos;
+    }
+
+    /**
+     * @return the status of the last response, or 0 if none was received
+     */
+    int statusCode() {
+        return statusCode;
+    }
+
+    String correlationId() {
+        return correlationId;
+    }
+
+    long decryptNanos() {
+        return decryptNanos;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    long rowNanos() {
+        return rowNanos;
+    }
+
+    /**
+     * @return why the row failed, or {@code null} if it succeeded
+     */
+    ErrorCategory category() {
+        return category;
+    }
+
+    String error() {
+        return error;
+    }
+}
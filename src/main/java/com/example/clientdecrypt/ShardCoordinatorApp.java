@@ -0,0 +1,139 @@
+package com.example.clientdecrypt;
+
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+@CommandLine.Command(
+    name = "shard-coordinator",
+    mixinStandardHelpOptions = true,
+    description = "Split a large input CSV into byte-range shards for shard-worker processes and merge their outputs in input order."
+)
+public final class ShardCoordinatorApp implements Callable<Integer> {
+    @CommandLine.Option(
+        names = "--input",
+        required = true,
+        description = "Input CSV with cardNumber and merchantTransactionId columns; an uncompressed file that every worker can read "
+            + "at the same path, whose records contain no quoted line breaks."
+    )
+    private Path input;
+
+    @CommandLine.Option(names = "--output", required = true, description = "Merged output file (.gz is compressed), or - for stdout.")
+    private String output;
+
+    @CommandLine.Option(
+        names = "--output-format",
+        description = "csv, jsonl or arrow; by default inferred from the --output extension."
+    )
+    private String outputFormat;
+
+    @CommandLine.Option(
+        names = "--work-dir",
+        required = true,
+        description = "Directory shared with the workers that holds the shard queue and per-shard outputs."
+    )
+    private Path workDirectory;
+
+    @CommandLine.Option(
+        names = "--shards",
+        defaultValue = "0",
+        description = "Number of shards; 0 derives it from --shard-size-mb (default: ${DEFAULT-VALUE})."
+    )
+    private int shards;
+
+    @CommandLine.Option(
+        names = "--shard-size-mb",
+        defaultValue = "64",
+        description = "Approximate input megabytes per shard (default: ${DEFAULT-VALUE})."
+    )
+    private long shardSizeMb;
+
+    @CommandLine.Option(
+        names = "--claim-timeout",
+        defaultValue = "300",
+        description = "Seconds without a heartbeat after which a claimed shard is given to another worker (default: ${DEFAULT-VALUE})."
+    )
+    private int claimTimeoutSeconds;
+
+    @CommandLine.Option(
+        names = "--poll-interval",
+        defaultValue = "5",
+        description = "Seconds between progress checks (default: ${DEFAULT-VALUE})."
+    )
+    private int pollIntervalSeconds;
+
+    @CommandLine.Option(
+        names = "--cleanup",
+        description = "Delete the work directory after a successful merge."
+    )
+    private boolean cleanup;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new ShardCoordinatorApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (shards < 0) {
+            throw new IllegalArgumentException("--shards must not be negative.");
+        }
+        if (shardSizeMb < 1 || claimTimeoutSeconds < 1 || pollIntervalSeconds < 1) {
+            throw new IllegalArgumentException("--shard-size-mb, --claim-timeout and --poll-interval must be at least 1.");
+        }
+        if (!Files.isRegularFile(input) || CsvStreams.isGzip(input.toString())) {
+            throw new IllegalArgumentException("--input must be an uncompressed file so it can be split into byte ranges.");
+        }
+        String format = OutputSink.format(outputFormat, output);
+        Files.createDirectories(workDirectory);
+        long inputBytes = Files.size(input);
+        long shardBytes = shards > 0 ? Math.max(1, (inputBytes + shards - 1) / shards) : shardSizeMb * 1024 * 1024;
+        ShardQueue queue = ShardQueue.plan(workDirectory, input, format, shardBytes, Duration.ofSeconds(claimTimeoutSeconds));
+        int retried = queue.retryFailed();
+        if (retried > 0) {
+            System.err.println("Requeued " + retried + " failed shards.");
+        }
+        System.err.println("Planned " + queue.manifest().shards() + " shards of " + input + " in " + workDirectory
+            + "; start shard-worker --work-dir " + workDirectory + " on each worker.");
+
+        long started = System.nanoTime();
+        ShardQueue.Status status = queue.status();
+        while (status.done() + status.failed() < status.shards()) {
+            Thread.sleep(pollIntervalSeconds * 1000L);
+            for (String requeued : queue.requeueStale()) {
+                System.err.println("Requeued " + requeued + " after its worker stopped sending heartbeats.");
+            }
+            status = queue.status();
+            System.err.printf("[%.0fs] %s%n", (System.nanoTime() - started) / 1e9, status);
+        }
+        if (status.failed() > 0) {
+            queue.failures().forEach(System.err::println);
+            System.err.println(status.failed() + " of " + status.shards() + " shards failed; rerun the coordinator to retry them.");
+            return 1;
+        }
+
+        try (OutputStream outputStream = CsvStreams.openOutputStream(output)) {
+            queue.merge(outputStream);
+        }
+        System.err.println("Merged " + status.shards() + " shards into " + output + ".");
+        if (cleanup) {
+            deleteRecursively(workDirectory);
+        }
+        return 0;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.clientdecrypt;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Work queue for a sharded run, kept entirely in a directory that every worker can see (a local
+ * disk for several processes on one host, or a shared mount for several hosts):
+ * <pre>
+ *   job.properties                 input, output format, shard count, claim timeout
+ *   todo/shard-00042               "start end" byte range of the input, waiting for a worker
+ *   claimed/shard-00042@worker-1   taken by worker-1, whose heartbeat keeps the file's mtime fresh
+ *   done/shard-00042@worker-1      finished; the output is out/shard-00042@worker-1.&lt;ext&gt;
+ *   failed/shard-00042@worker-1    gave up with an error; retried when the coordinator restarts
+ * </pre>
+ * Every state change is a single atomic rename, so exactly one worker wins a claim, and a claim
+ * whose heartbeat stopped can be moved back to {@code todo/} without racing its completion.
+ */
+final class ShardQueue {
+    private static final String MANIFEST = "job.properties";
+    private static final String SHARD_PREFIX = "shard-";
+
+    private final Path workDirectory;
+    private final Manifest manifest;
+
+    private ShardQueue(Path workDirectory, Manifest manifest) {
+        this.workDirectory = workDirectory;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Splits {@code input} after its header row into about {@code shardBytes}-sized byte ranges,
+     * without reading more than the header. An existing plan for the same input is reused, so a
+     * restarted coordinator picks up where the previous one stopped.
+     */
+    static ShardQueue plan(Path workDirectory, Path input, String format, long shardBytes, Duration claimTimeout)
+        throws IOException {
+        Path inputFile = input.toAbsolutePath().normalize();
+        long size = Files.size(inputFile);
+        Path manifestPath = workDirectory.resolve(MANIFEST);
+        if (Files.exists(manifestPath)) {
+            Manifest existing = Manifest.read(manifestPath);
+            if (!existing.input().equals(inputFile) || existing.inputBytes() != size || !existing.format().equals(format)) {
+                throw new IllegalArgumentException("Work directory " + workDirectory + " belongs to a run over "
+                    + existing.input() + " (" + existing.format() + "); use a new --work-dir.");
+            }
+            return new ShardQueue(workDirectory, existing);
+        }
+
+        long dataStart = headerLength(inputFile);
+        int shards = (int) Math.max(1, Math.min(100_000, (size - dataStart + shardBytes - 1) / shardBytes));
+        Manifest manifest = new Manifest(inputFile, size, format, shards, claimTimeout);
+        ShardQueue queue = new ShardQueue(workDirectory, manifest);
+        for (String directory : List.of("todo", "claimed", "done", "failed", "out")) {
+            Files.createDirectories(workDirectory.resolve(directory));
+        }
+        long dataBytes = size - dataStart;
+        for (int shard = 0; shard < shards; shard++) {
+            long start = dataStart + dataBytes * shard / shards;
+            long end = dataStart + dataBytes * (shard + 1) / shards;
+            Files.writeString(queue.todo().resolve(shardName(shard)), start + " " + end + "\n");
+        }
+        // Written last and atomically: workers wait for it before claiming anything.
+        Path temporary = workDirectory.resolve(MANIFEST + ".tmp");
+        manifest.write(temporary);
+        move(temporary, manifestPath);
+        return queue;
+    }
+
+    /**
+     * @return the queue in {@code workDirectory}, or {@code null} if no coordinator has planned it yet
+     */
+    static ShardQueue open(Path workDirectory) throws IOException {
+        Path manifestPath = workDirectory.resolve(MANIFEST);
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+        return new ShardQueue(workDirectory, Manifest.read(manifestPath));
+    }
+
+    Manifest manifest() {
+        return manifest;
+    }
+
+    /**
+     * Claims the lowest queued shard for {@code workerId}.
+     *
+     * @return the claim, or {@code null} if no shard is queued
+     */
+    Claim claim(String workerId) throws IOException {
+        for (Path queued : list(todo())) {
+            String shardName = queued.getFileName().toString();
+            Path claimFile = claimed().resolve(shardName + "@" + workerId);
+            try {
+                // Fresh mtime first, so the claim does not look stale the moment it lands in claimed/.
+                Files.setLastModifiedTime(queued, FileTime.from(Instant.now()));
+                move(queued, claimFile);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+            String[] range = Files.readString(claimFile).trim().split(" ");
+            Shard shard = new Shard(shardIndex(shardName), Long.parseLong(range[0]), Long.parseLong(range[1]));
+            Path output = workDirectory.resolve("out").resolve(shardName + "@" + workerId + "." + OutputSink.extension(manifest.format()));
+            return new Claim(shard, claimFile, output);
+        }
+        return null;
+    }
+
+    /**
+     * Renews the claim's lease.
+     *
+     * @return {@code false} if the claim was taken away as stale and the shard must be abandoned
+     */
+    boolean heartbeat(Claim claim) throws IOException {
+        try {
+            Files.setLastModifiedTime(claim.claimFile(), FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks the shard done once its output is durable.
+     *
+     * @return {@code false} if the claim was lost meanwhile; the output is then not used
+     */
+    boolean complete(Claim claim) throws IOException {
+        return moveClaim(claim, done());
+    }
+
+    void fail(Claim claim, String reason) throws IOException {
+        if (moveClaim(claim, failed())) {
+            Files.writeString(failed().resolve(claim.claimFile().getFileName()), reason + "\n", StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Moves claims whose heartbeat is older than the claim timeout back to the queue.
+     *
+     * @return the names of the requeued claims
+     */
+    List<String> requeueStale() throws IOException {
+        Instant cutoff = Instant.now().minus(manifest.claimTimeout());
+        List<String> requeued = new ArrayList<>();
+        for (Path claimFile : list(claimed())) {
+            try {
+                if (Files.getLastModifiedTime(claimFile).toInstant().isBefore(cutoff)) {
+                    move(claimFile, todo().resolve(shardName(claimFile)));
+                    requeued.add(claimFile.getFileName().toString());
+                }
+            } catch (NoSuchFileException ignored) {
+                // Completed or requeued by someone else meanwhile.
+            }
+        }
+        return requeued;
+    }
+
+    /**
+     * Queues failed shards again.
+     *
+     * @return the number of shards requeued
+     */
+    int retryFailed() throws IOException {
+        int retried = 0;
+        for (Path failedFile : list(failed())) {
+            try {
+                move(failedFile, todo().resolve(shardName(failedFile)));
+                retried++;
+            } catch (NoSuchFileException | FileAlreadyExistsException ignored) {
+                // Requeued by someone else meanwhile.
+            }
+        }
+        return retried;
+    }
+
+    Status status() throws IOException {
+        return new Status(manifest.shards(), list(todo()).size(), list(claimed()).size(), list(done()).size(), list(failed()).size());
+    }
+
+    /**
+     * @return contents of the failed markers, one per failed shard
+     */
+    List<String> failures() throws IOException {
+        List<String> failures = new ArrayList<>();
+        for (Path failedFile : list(failed())) {
+            failures.add(failedFile.getFileName() + ": " + Files.readString(failedFile).trim());
+        }
+        return failures;
+    }
+
+    /**
+     * @return every shard's output in input order; all shards must be done
+     */
+    List<Path> outputs() throws IOException {
+        Path[] outputs = new Path[manifest.shards()];
+        for (Path doneFile : list(done())) {
+            String name = doneFile.getFileName().toString();
+            outputs[shardIndex(name)] = workDirectory.resolve("out").resolve(name + "." + OutputSink.extension(manifest.format()));
+        }
+        for (int shard = 0; shard < outputs.length; shard++) {
+            if (outputs[shard] == null || !Files.exists(outputs[shard])) {
+                throw new IOException("Output of " + shardName(shard) + " is missing.");
+            }
+        }
+        return List.of(outputs);
+    }
+
+    /**
+     * Writes the shard outputs one after another, keeping only the first header or schema.
+     */
+    void merge(OutputStream outputStream) throws IOException {
+        OutputSink.concatenate(manifest.format(), outputs(), outputStream);
+    }
+
+    private boolean moveClaim(Claim claim, Path directory) throws IOException {
+        try {
+            move(claim.claimFile(), directory.resolve(claim.claimFile().getFileName()));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+    private Path todo() {
+        return workDirectory.resolve("todo");
+    }
+
+    private Path claimed() {
+        return workDirectory.resolve("claimed");
+    }
+
+    private Path done() {
+        return workDirectory.resolve("done");
+    }
+
+    private Path failed() {
+        return workDirectory.resolve("failed");
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SHARD_PREFIX + "*")) {
+            stream.forEach(files::add);
+        } catch (NoSuchFileException ex) {
+            // The coordinator removed the work directory after merging; nothing is left to do.
+            return files;
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            throw new IOException("The work directory must support atomic renames: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static String shardName(int shard) {
+        return String.format("%s%05d", SHARD_PREFIX, shard);
+    }
+
+    /**
+     * @return {@code shard-00042} for {@code shard-00042@worker-1}
+     */
+    private static String shardName(Path claimFile) {
+        String name = claimFile.getFileName().toString();
+        int at = name.indexOf('@');
+        return at < 0 ? name : name.substring(0, at);
+    }
+
+    private static int shardIndex(String name) {
+        int at = name.indexOf('@');
+        return Integer.parseInt(name.substring(SHARD_PREFIX.length(), at < 0 ? name.length() : at));
+    }
+
+    /**
+     * @return bytes in the first line of {@code input}, including its line break
+     */
+    private static long headerLength(Path input) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(input))) {
+            long length = 0;
+            int b;
+            while ((b = inputStream.read()) != -1) {
+                length++;
+                if (b == '\n') {
+                    return length;
+                }
+            }
+        }
+        throw new IOException("Input " + input + " has no header line followed by data.");
+    }
+
+    /**
+     * @return a worker id from host name and process id, safe to use in file names
+     */
+    static String defaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException ex) {
+            host = "worker";
+        }
+        return sanitizeWorkerId(host + "-" + ProcessHandle.current().pid());
+    }
+
+    static String sanitizeWorkerId(String workerId) {
+        return workerId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Plan of a sharded run as recorded in {@code job.properties}.
+     */
+    record Manifest(Path input, long inputBytes, String format, int shards, Duration claimTimeout) {
+        private void write(Path path) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("input", input.toString());
+            properties.setProperty("inputBytes", Long.toString(inputBytes));
+            properties.setProperty("format", format);
+            properties.setProperty("shards", Integer.toString(shards));
+            properties.setProperty("claimTimeoutSeconds", Long.toString(claimTimeout.toSeconds()));
+            try (OutputStream outputStream = Files.newOutputStream(path)) {
+                properties.store(outputStream, "Sharded client-decrypt run");
+            }
+        }
+
+        private static Manifest read(Path path) throws IOException {
+            Properties properties = new Properties();
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                properties.load(inputStream);
+            }
+            try {
+                return new Manifest(
+                    Path.of(Objects.requireNonNull(properties.getProperty("input"), "input")),
+                    Long.parseLong(properties.getProperty("inputBytes")),
+                    Objects.requireNonNull(properties.getProperty("format"), "format"),
+                    Integer.parseInt(properties.getProperty("shards")),
+                    Duration.ofSeconds(Long.parseLong(properties.getProperty("claimTimeoutSeconds"))));
+            } catch (RuntimeException ex) {
+                throw new IOException("Corrupt " + path + ": " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    record Shard(int index, long start, long end) {
+    }
+
+    /**
+     * A shard held by this worker, and where its output goes.
+     */
+    record Claim(Shard shard, Path claimFile, Path output) {
+        String name() {
+            return shardName(shard.index());
+        }
+    }
+
+    record Status(int shards, int queued, int running, int done, int failed) {
+        @Override
+        public String toString() {
+            return "done " + done + "/" + shards + ", running " + running + ", queued " + queued + ", failed " + failed;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import picocli.CommandLine;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@CommandLine.Command(
+    name = "shard-worker",
+    mixinStandardHelpOptions = true,
+    description = "Claim shards planned by shard-coordinator, fetch and decrypt their rows, and write one output per shard."
+)
+public final class ShardWorkerApp implements Callable<Integer> {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    @CommandLine.Option(names = "--work-dir", required = true, description = "Work directory given to shard-coordinator.")
+    private Path workDirectory;
+
+    @CommandLine.Option(names = "--config", required = true, description = "Properties file with API, OAuth, and encryption settings.")
+    private Path configPath;
+
+    @CommandLine.Option(
+        names = "--concurrency",
+        defaultValue = "1",
+        description = "Maximum number of rows fetched and decrypted in parallel (default: ${DEFAULT-VALUE})."
+    )
+    private int concurrency;
+
+    @CommandLine.Option(
+        names = "--worker-id",
+        description = "Name recorded on claimed shards (default: host name and process id)."
+    )
+    private String workerId;
+
+    @CommandLine.Option(
+        names = "--checkpoint-every",
+        defaultValue = "1000",
+        description = "Rows between output flushes (default: ${DEFAULT-VALUE})."
+    )
+    private int checkpointEvery;
+
+    @CommandLine.Option(
+        names = "--poll-interval",
+        defaultValue = "5",
+        description = "Seconds between checks for a work plan or for shards to free up (default: ${DEFAULT-VALUE})."
+    )
+    private int pollIntervalSeconds;
+
+    @CommandLine.Option(
+        names = "--progress-interval",
+        defaultValue = "10",
+        description = "Seconds between progress lines on stderr; 0 disables them (default: ${DEFAULT-VALUE})."
+    )
+    private int progressIntervalSeconds;
+
+    @CommandLine.Option(
+        names = "--metrics-port",
+        defaultValue = "0",
+        description = "Serve live metrics on localhost at /metrics (Prometheus) and /metrics.json; 0 disables (default: ${DEFAULT-VALUE})."
+    )
+    private int metricsPort;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new ShardWorkerApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (pollIntervalSeconds < 1) {
+            throw new IllegalArgumentException("--poll-interval must be at least 1.");
+        }
+        String worker = workerId != null ? ShardQueue.sanitizeWorkerId(workerId) : ShardQueue.defaultWorkerId();
+        ShardQueue queue;
+        while ((queue = ShardQueue.open(workDirectory)) == null) {
+            System.err.println("Waiting for shard-coordinator to plan " + workDirectory + ".");
+            Thread.sleep(pollIntervalSeconds * 1000L);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        AppConfig config = AppConfig.load(configPath);
+        ExecutorService httpExecutor = config.httpClientThreads() > 0
+            ? Executors.newFixedThreadPool(config.httpClientThreads())
+            : null;
+        BatchMetrics metrics = new BatchMetrics();
+        CheckoutClient checkoutClient = new CheckoutClient(mapper, config, httpExecutor, metrics);
+        PayloadDecryptor decryptor = new PayloadDecryptor(mapper, config);
+        RetryingCheckout checkout = new RetryingCheckout(
+            checkoutClient,
+            RateLimiter.of(config.rateLimitPerSecond(), config.rateLimitBurst()),
+            RetryPolicy.from(config),
+            HedgePolicy.from(config),
+            new AdaptiveConcurrencyLimit(concurrency),
+            metrics);
+        CheckoutPipeline pipeline = new CheckoutPipeline(checkout, decryptor, concurrency, metrics, ResultCoalescer.from(config));
+
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricsReporter reporter = MetricsReporter.start(metrics, mapper, progressIntervalSeconds, metricsPort);
+        int completed = 0;
+        int failed = 0;
+        try {
+            while (true) {
+                queue.requeueStale();
+                ShardQueue.Claim claim = queue.claim(worker);
+                if (claim == null) {
+                    ShardQueue.Status status = queue.status();
+                    if (status.queued() == 0 && status.running() == 0) {
+                        break;
+                    }
+                    // Other workers hold the remaining shards; wait in case one of them stops.
+                    Thread.sleep(pollIntervalSeconds * 1000L);
+                    continue;
+                }
+                if (processShard(queue, claim, pipeline, heartbeats)) {
+                    completed++;
+                } else {
+                    failed++;
+                }
+            }
+            System.err.println("Worker " + worker + " finished: " + completed + " shards done, " + failed + " failed or lost.");
+            System.err.print(metrics.summary());
+            return failed == 0 ? 0 : 1;
+        } finally {
+            reporter.close();
+            heartbeats.shutdownNow();
+            if (httpExecutor != null) {
+                httpExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Writes the shard's rows to its own output, renewing the claim meanwhile. A shard whose
+     * claim is taken away, because heartbeats were late enough for the coordinator or another
+     * worker to requeue it, is abandoned and its partial output deleted.
+     *
+     * @return {@code true} if the shard was completed by this worker
+     */
+    private boolean processShard(
+        ShardQueue queue,
+        ShardQueue.Claim claim,
+        CheckoutPipeline pipeline,
+        ScheduledExecutorService heartbeats
+    ) throws IOException, InterruptedException {
+        ShardQueue.Shard shard = claim.shard();
+        System.err.println("Processing " + claim.name() + " (bytes " + shard.start() + "-" + shard.end() + ").");
+        Thread processing = Thread.currentThread();
+        // Set once, either by the heartbeat when the claim is lost or by this thread when the
+        // shard is finished, so a late heartbeat cannot interrupt the next shard.
+        AtomicBoolean settled = new AtomicBoolean();
+        long heartbeatMillis = Math.max(1000, queue.manifest().claimTimeout().toMillis() / 3);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+            try {
+                if (!queue.heartbeat(claim) && settled.compareAndSet(false, true)) {
+                    processing.interrupt();
+                }
+            } catch (IOException ex) {
+                System.err.println("Heartbeat for " + claim.name() + " failed: " + ex.getMessage());
+            }
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+
+        try {
+            try (InputRows rows = MappedCsvReader.open(queue.manifest().input(), shard.start(), shard.end());
+                 FileChannel outputChannel = FileChannel.open(
+                     claim.output(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputSink sink = OutputSink.open(
+                     queue.manifest().format(),
+                     new BufferedOutputStream(Channels.newOutputStream(outputChannel), OUTPUT_BUFFER_SIZE),
+                     false);
+                 CheckpointJournal journal = CheckpointJournal.flushOnly(sink, checkpointEvery)) {
+                pipeline.run(rows, sink, journal);
+                sink.flush();
+                outputChannel.force(true);
+            }
+            if (settled.compareAndSet(false, true) && queue.complete(claim)) {
+                return true;
+            }
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            if (settled.compareAndSet(false, true)) {
+                System.err.println("Failed to process " + claim.name() + ": " + ex.getMessage());
+                queue.fail(claim, String.valueOf(ex.getMessage()));
+                if (ex instanceof InterruptedException interrupted) {
+                    throw interrupted;
+                }
+                return false;
+            }
+        } finally {
+            heartbeat.cancel(false);
+        }
+        // The heartbeat's interrupt may have arrived after the rows were already written.
+        Thread.interrupted();
+        System.err.println("Lost the claim on " + claim.name() + "; another worker will process it.");
+        Files.deleteIfExists(claim.output());
+        return false;
+    }
+}
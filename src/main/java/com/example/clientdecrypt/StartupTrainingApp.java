@@ -0,0 +1,123 @@
+package com.example.clientdecrypt;
+
+import com.example.encrypt.EncryptPayloadApp;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the short-lived commands once, end to end and without credentials, so the build can
+ * record what they load at startup: the class list for an AppCDS archive, or the reflection and
+ * resource configuration for native-image. Checkouts go to an in-process {@link MockCheckoutServer};
+ * the signing, encryption and decryption keys are a throwaway pair made with {@code keytool}.
+ */
+@CommandLine.Command(
+    name = "startup-training",
+    mixinStandardHelpOptions = true,
+    description = "Run client-decrypt, client-encrypt-example and encrypt-payload against a local mock as a training run."
+)
+public final class StartupTrainingApp implements Callable<Integer> {
+    private static final String PASSWORD = "training";
+    private static final String ALIAS = "training";
+
+    @CommandLine.Option(
+        names = "--work-dir",
+        defaultValue = "target/startup-training",
+        description = "Directory for the generated keys, config, input and outputs (default: ${DEFAULT-VALUE})."
+    )
+    private Path workDir;
+
+    @CommandLine.Option(
+        names = "--payload",
+        defaultValue = "examples/chekcoutDecryptedCardResponse.json",
+        description = "Decrypted payload the mock returns and the encrypt commands encrypt (default: ${DEFAULT-VALUE})."
+    )
+    private Path payload;
+
+    @CommandLine.Option(names = "--rows", defaultValue = "200", description = "Input rows for client-decrypt (default: ${DEFAULT-VALUE}).")
+    private int rows;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new StartupTrainingApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (rows < 1) {
+            throw new IllegalArgumentException("--rows must be at least 1.");
+        }
+        Files.createDirectories(workDir);
+        Path keyStore = workDir.resolve("training.p12");
+        Path certificate = workDir.resolve("training.crt");
+        Files.deleteIfExists(keyStore);
+        keytool("-genkeypair", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1", "-dname", "CN=startup-training",
+            "-alias", ALIAS, "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD);
+        keytool("-exportcert", "-rfc", "-alias", ALIAS, "-keystore", keyStore.toString(), "-storepass", PASSWORD,
+            "-file", certificate.toString());
+
+        Path input = workDir.resolve("input.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("cardNumber,merchantTransactionId\r\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("5555555555554444,training-" + i + "\r\n");
+            }
+        }
+
+        MockCheckoutServer.Settings settings = new MockCheckoutServer.Settings(
+            0, certificate, payload, new MockCheckoutServer.Latency(MockCheckoutServer.LatencyDistribution.FIXED, 0, 0),
+            0, 0, 0, 1, true);
+        try (MockCheckoutServer mock = MockCheckoutServer.start(settings)) {
+            Path config = workDir.resolve("training.properties");
+            Files.write(config, List.of(
+                "baseUrl=" + mock.baseUrl(),
+                "consumerKey=training!client",
+                "signingKeyPath=" + keyStore,
+                "signingKeyAlias=" + ALIAS,
+                "signingKeyPassword=" + PASSWORD,
+                "srcDpaId=startup-training",
+                "encryptionCertificatePath=" + certificate,
+                "decryptionKeyPath=" + keyStore,
+                "decryptionKeyAlias=" + ALIAS,
+                "decryptionKeyPassword=" + PASSWORD));
+            run(new ClientDecryptApp(), "--config", config.toString(), "--input", input.toString(),
+                "--output", workDir.resolve("output.csv").toString(), "--concurrency", "8", "--progress-interval", "0");
+            run(new EncryptExampleApp(), "--config", config.toString(), "--input", payload.toString(),
+                "--output", workDir.resolve("encrypted-example.json").toString());
+        }
+
+        Path encryptConfig = workDir.resolve("encrypt.properties");
+        Files.write(encryptConfig, List.of(
+            "encryptionCertificatePath=" + certificate.toAbsolutePath(),
+            "inputJson=" + payload.toAbsolutePath(),
+            "outputJson=" + workDir.resolve("encrypted-payload.json").toAbsolutePath()));
+        run(new EncryptPayloadApp(), "--config", encryptConfig.toString());
+        System.err.println("Startup training finished in " + workDir);
+        return 0;
+    }
+
+    private static void run(Callable<Integer> command, String... args) throws IOException {
+        int exitCode = new CommandLine(command).execute(args);
+        if (exitCode != 0) {
+            String name = command.getClass().getAnnotation(CommandLine.Command.class).name();
+            throw new IOException("Training run of " + name + " exited with " + exitCode + ".");
+        }
+    }
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool " + args[0] + " failed with exit code " + process.exitValue() + ".");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.clientdecrypt;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The merchants a {@link CheckoutPipeline} checks out for, each with its own credentials, keys
+ * and rate limit, and the admission of their checkout calls into the shared concurrency limit.
+ * A single-tenant run admits calls first come, first served; a multi-tenant run admits them
+ * through a {@link FairScheduler}.
+ */
+final class Tenants {
+    /**
+     * One merchant's checkout and decryption.
+     *
+     * @param name the name from the {@code tenants} property, or {@code null} for a single-tenant config
+     */
+    record Tenant(String name, RetryingCheckout checkout, PayloadDecryptor decryptor) {
+    }
+
+    private final Map<String, Tenant> byName;
+    private final Tenant defaultTenant;
+    private final AdaptiveConcurrencyLimit limit;
+    private final FairScheduler scheduler;
+
+    private Tenants(Map<String, Tenant> byName, Tenant defaultTenant, AdaptiveConcurrencyLimit limit, FairScheduler scheduler) {
+        this.byName = byName;
+        this.defaultTenant = defaultTenant;
+        this.limit = limit;
+        this.scheduler = scheduler;
+    }
+
+    static Tenants single(RetryingCheckout checkout, PayloadDecryptor decryptor) {
+        return new Tenants(Map.of(), new Tenant(null, checkout, decryptor), checkout.concurrencyLimit(), null);
+    }
+
+    /**
+     * @param tenants       one entry per tenant, whose checkouts all share {@code limit}
+     * @param configs       the tenant configs by name, for their weight and concurrency cap
+     * @param defaultTenant the tenant of rows without one, or {@code null} to fail such rows
+     *                      unless there is only one tenant
+     */
+    static Tenants of(List<Tenant> tenants, Map<String, AppConfig> configs, String defaultTenant, AdaptiveConcurrencyLimit limit) {
+        FairScheduler scheduler = new FairScheduler(limit);
+        Map<String, Tenant> byName = new LinkedHashMap<>();
+        for (Tenant tenant : tenants) {
+            AppConfig config = configs.get(tenant.name());
+            scheduler.addTenant(tenant.name(), config.weight(), config.maxConcurrency(), tenant.checkout().rateLimiter());
+            byName.put(tenant.name(), tenant);
+        }
+        Tenant fallback = null;
+        if (defaultTenant != null) {
+            fallback = byName.get(defaultTenant);
+            if (fallback == null) {
+                throw new IllegalArgumentException("--default-tenant " + defaultTenant + " is not listed in tenants.");
+            }
+        } else if (byName.size() == 1) {
+            fallback = tenants.get(0);
+        }
+        return new Tenants(byName, fallback, limit, scheduler);
+    }
+
+    boolean multiTenant() {
+        return scheduler != null;
+    }
+
+    /**
+     * @param name the row's tenant column, possibly {@code null} or blank
+     * @return the tenant, or {@code null} if the row names an unknown tenant or none without a default
+     */
+    Tenant resolve(String name) {
+        if (scheduler == null || name == null || name.isBlank()) {
+            return defaultTenant;
+        }
+        return byName.get(name);
+    }
+
+    /**
+     * Queues a call of {@code tenant} for a slot in the concurrency limit without blocking: first
+     * come, first served in a single-tenant run, through the scheduler in a multi-tenant run.
+     *
+     * @return a future that completes when the call may start; the caller must then {@link #release} it
+     */
+    CompletableFuture<Void> acquire(Tenant tenant) {
+        return scheduler != null ? scheduler.acquire(tenant.name()) : limit.acquireAsync();
+    }
+
+    void release(Tenant tenant) {
+        if (scheduler != null) {
+            scheduler.release(tenant.name());
+        } else {
+            limit.release();
+        }
+    }
+
+    /**
+     * @return one line per tenant for a multi-tenant run, otherwise the empty string
+     */
+    String summary() {
+        return scheduler == null ? "" : scheduler.summary();
+    }
+}
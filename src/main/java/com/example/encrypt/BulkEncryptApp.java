@@ -0,0 +1,276 @@
+package com.example.encrypt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+@CommandLine.Command(
+    name = "encrypt-bulk",
+    mixinStandardHelpOptions = true,
+    description = "Encrypt many distinct payloads in parallel into JSONL that decrypt-batch can read."
+)
+public final class BulkEncryptApp implements Callable<Integer> {
+    private static final String STDIO = "-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @CommandLine.Option(
+        names = "--config",
+        description = "Path to encrypt.properties.",
+        defaultValue = "config/encrypt.properties"
+    )
+    private Path configPath;
+
+    @CommandLine.Option(
+        names = "--template",
+        description = "JSON payload to vary --count times (default: inputJson from the config)."
+    )
+    private Path template;
+
+    @CommandLine.Option(names = "--count", description = "Number of payloads to generate from the template.")
+    private long count;
+
+    @CommandLine.Option(
+        names = "--input",
+        description = "JSONL payloads to encrypt instead of a template, one object per line; - for stdin."
+    )
+    private String input;
+
+    @CommandLine.Option(names = "--output", required = true, description = "Output JSONL file, or - for stdout.")
+    private String output;
+
+    @CommandLine.Option(
+        names = "--vary",
+        negatable = true,
+        defaultValue = "true",
+        fallbackValue = "true",
+        description = "Replace card.primaryAccountNumber and token.paymentToken with distinct Luhn-valid numbers "
+            + "that keep the original BIN and length (default: ${DEFAULT-VALUE})."
+    )
+    private boolean vary;
+
+    @CommandLine.Option(
+        names = "--id-prefix",
+        defaultValue = "bulk-",
+        description = "Prefix of generated merchantTransactionIds; JSONL payloads that carry one keep it (default: ${DEFAULT-VALUE})."
+    )
+    private String idPrefix;
+
+    @CommandLine.Option(
+        names = "--first-index",
+        defaultValue = "0",
+        description = "Index of the first payload, so separate runs can produce disjoint ids and numbers (default: ${DEFAULT-VALUE})."
+    )
+    private long firstIndex;
+
+    @CommandLine.Option(
+        names = "--parallelism",
+        description = "Encrypt threads (default: number of available processors)."
+    )
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(
+        names = "--chunk-size",
+        defaultValue = "4096",
+        description = "Payloads encrypted in parallel before being written in order (default: ${DEFAULT-VALUE})."
+    )
+    private int chunkSize;
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new BulkEncryptApp()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("--parallelism and --chunk-size must be at least 1.");
+        }
+        if ((input == null) == (count <= 0)) {
+            throw new IllegalArgumentException("Give either --count (with an optional --template) or --input.");
+        }
+        if (input != null && template != null) {
+            throw new IllegalArgumentException("--template and --input cannot be combined.");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        EncryptConfig config = EncryptConfig.load(configPath);
+        // One certificate and JweConfig shared by every worker thread.
+        PayloadEncryptor encryptor = new PayloadEncryptor(config.encryptionCertificatePath());
+
+        long started = System.nanoTime();
+        long written = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (Writer writer = openWriter(output)) {
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            if (input == null) {
+                ObjectNode payload = (ObjectNode) mapper.readTree(Files.readString(template != null ? template : config.inputJson()));
+                for (long i = 0; i < count; i++) {
+                    chunk.add(new Row(firstIndex + i, payload, false));
+                    if (chunk.size() == chunkSize) {
+                        written += writeChunk(writer, encryptChunk(pool, mapper, encryptor, chunk));
+                        chunk.clear();
+                    }
+                }
+            } else {
+                try (MappingIterator<ObjectNode> payloads = mapper.readerFor(ObjectNode.class).readValues(openReader(input))) {
+                    for (long i = firstIndex; payloads.hasNext(); i++) {
+                        chunk.add(new Row(i, payloads.next(), true));
+                        if (chunk.size() == chunkSize) {
+                            written += writeChunk(writer, encryptChunk(pool, mapper, encryptor, chunk));
+                            chunk.clear();
+                        }
+                    }
+                }
+            }
+            written += writeChunk(writer, encryptChunk(pool, mapper, encryptor, chunk));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.printf("Encrypted %d payloads in %.1f s, %.1f payloads/s%n", written, seconds, written / Math.max(seconds, 1e-9));
+        return 0;
+    }
+
+    private List<String> encryptChunk(ForkJoinPool pool, ObjectMapper mapper, PayloadEncryptor encryptor, List<Row> chunk)
+        throws InterruptedException, IOException {
+        try {
+            return pool.submit(() -> chunk.parallelStream()
+                .map(row -> encrypt(mapper, encryptor, row))
+                .toList()).get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Encrypt worker failed: " + ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    /**
+     * @return one output line: the payload's {@code merchantTransactionId}, PAN as {@code cardNumber}
+     *         and the JWE as {@code encryptedValue}
+     */
+    private String encrypt(ObjectMapper mapper, PayloadEncryptor encryptor, Row row) {
+        // Template rows share one node; each worker varies its own copy.
+        ObjectNode payload = row.payload().deepCopy();
+        // A template's own id would repeat on every row, so only JSONL payloads keep theirs.
+        String merchantTransactionId = row.fromInput() && payload.path("merchantTransactionId").isTextual()
+            ? payload.get("merchantTransactionId").asText()
+            : idPrefix + row.index();
+        if (!row.fromInput() && payload.has("merchantTransactionId")) {
+            payload.put("merchantTransactionId", merchantTransactionId);
+        }
+        if (vary) {
+            replaceNumber(payload, "card", "primaryAccountNumber", row.index());
+            replaceNumber(payload, "token", "paymentToken", row.index());
+        }
+        try {
+            String encryptedValue = encryptor.encryptedValue(mapper.writeValueAsString(payload));
+            ObjectNode line = mapper.createObjectNode();
+            line.put("merchantTransactionId", merchantTransactionId);
+            JsonNode pan = payload.path("card").path("primaryAccountNumber");
+            if (pan.isTextual()) {
+                line.put("cardNumber", pan.asText());
+            }
+            line.put("encryptedValue", encryptedValue);
+            return mapper.writeValueAsString(line);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to encrypt payload " + merchantTransactionId + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static long writeChunk(Writer writer, List<String> lines) throws IOException {
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        return lines.size();
+    }
+
+    /**
+     * Replaces {@code parent.field} with a number of the same length and first six digits whose
+     * middle digits are {@code index}, completed with a Luhn check digit. Numbers are distinct for
+     * indexes below 10^(length - 7).
+     */
+    private static void replaceNumber(ObjectNode payload, String parent, String field, long index) {
+        JsonNode container = payload.path(parent);
+        JsonNode original = container.path(field);
+        if (!original.isTextual() || original.asText().length() < 12 || !original.asText().chars().allMatch(Character::isDigit)) {
+            return;
+        }
+        String number = original.asText();
+        int middleLength = number.length() - 7;
+        String middle = Long.toString(Math.floorMod(index, pow10(middleLength)));
+        StringBuilder digits = new StringBuilder(number.length())
+            .append(number, 0, 6)
+            .append("0".repeat(middleLength - middle.length()))
+            .append(middle);
+        digits.append(luhnCheckDigit(digits));
+        ((ObjectNode) container).put(field, digits.toString());
+    }
+
+    private static long pow10(int exponent) {
+        long value = 1;
+        for (int i = 0; i < Math.min(exponent, 18); i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private static char luhnCheckDigit(CharSequence digits) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    private static Reader openReader(String location) throws IOException {
+        return STDIO.equals(location)
+            ? new BufferedReader(new InputStreamReader(new FileInputStream(FileDescriptor.in), StandardCharsets.UTF_8), BUFFER_SIZE)
+            : Files.newBufferedReader(Path.of(location));
+    }
+
+    private static Writer openWriter(String location) throws IOException {
+        if (STDIO.equals(location)) {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+        Path path = Path.of(location);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new BufferedWriter(Files.newBufferedWriter(path), BUFFER_SIZE);
+    }
+
+    /**
+     * @param fromInput {@code true} for a payload read from {@code --input}, {@code false} for a copy of the template
+     */
+    private record Row(long index, ObjectNode payload, boolean fromInput) {
+    }
+}
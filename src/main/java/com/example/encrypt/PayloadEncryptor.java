@@ -5,11 +5,36 @@ import com.mastercard.developer.encryption.JweConfigBuilder;
 import com.mastercard.developer.encryption.JweEncryption;
 import com.mastercard.developer.utils.EncryptionUtils;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.cert.Certificate;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
 
 final class PayloadEncryptor {
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final OAEPParameterSpec OAEP_SHA256 = new OAEPParameterSpec(
+        "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+    private static final int CONTENT_KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
     private final JweConfig jweConfig;
+    private final PublicKey publicKey;
+    private final String encodedHeader;
+    private final byte[] aad;
+    private final SecureRandom random = new SecureRandom();
 
     PayloadEncryptor(Path encryptionCertificatePath) throws Exception {
         if (encryptionCertificatePath == null) {
@@ -21,9 +46,43 @@ final class PayloadEncryptor {
             .withEncryptionPath("$", "$")
             .withEncryptedValueFieldName("encryptedValue")
             .build();
+        this.publicKey = encryptionCertificate.getPublicKey();
+        // The header JweEncryption writes, with the certificate's public key fingerprint as kid.
+        String kid = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded()));
+        String header = "{\"kid\":\"" + kid + "\",\"cty\":\"application/json\",\"enc\":\"A256GCM\",\"alg\":\"RSA-OAEP-256\"}";
+        this.encodedHeader = BASE64_URL.encodeToString(header.getBytes(StandardCharsets.UTF_8));
+        this.aad = encodedHeader.getBytes(StandardCharsets.US_ASCII);
     }
 
     String encrypt(String payloadJson) throws com.mastercard.developer.encryption.EncryptionException {
         return JweEncryption.encryptPayload(payloadJson, jweConfig);
     }
+
+    /**
+     * Encrypts {@code payloadJson} as a whole into the compact JWE that {@link #encrypt} would put in
+     * {@code encryptedValue} ({@code RSA-OAEP-256} and {@code A256GCM}), without the JSON-path
+     * round trip of {@code JweEncryption}. Safe to call from several threads.
+     */
+    String encryptedValue(String payloadJson) throws GeneralSecurityException {
+        byte[] contentKey = new byte[CONTENT_KEY_BYTES];
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(contentKey);
+        random.nextBytes(iv);
+
+        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPPadding");
+        rsa.init(Cipher.ENCRYPT_MODE, publicKey, OAEP_SHA256);
+        byte[] encryptedKey = rsa.doFinal(contentKey);
+
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        gcm.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(contentKey, "AES"), new GCMParameterSpec(TAG_BITS, iv));
+        gcm.updateAAD(aad);
+        byte[] sealed = gcm.doFinal(payloadJson.getBytes(StandardCharsets.UTF_8));
+        int ciphertextLength = sealed.length - TAG_BITS / 8;
+
+        return encodedHeader
+            + '.' + BASE64_URL.encodeToString(encryptedKey)
+            + '.' + BASE64_URL.encodeToString(iv)
+            + '.' + BASE64_URL.encodeToString(Arrays.copyOfRange(sealed, 0, ciphertextLength))
+            + '.' + BASE64_URL.encodeToString(Arrays.copyOfRange(sealed, ciphertextLength, sealed.length));
+    }
 }
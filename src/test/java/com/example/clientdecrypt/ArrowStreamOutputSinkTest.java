@@ -0,0 +1,145 @@
+package com.example.clientdecrypt;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * {@link ArrowStreamOutputSink}, which encodes the Arrow IPC stream by hand, read back with the
+ * Arrow Java library.
+ */
+class ArrowStreamOutputSinkTest {
+    private static final String[] VALUES = {"", "a", "5555555555554444", "Zoë Ångström", "山田", "😀", "a,\"b\"\n"};
+
+    @Test
+    void declaresThirteenNonNullUtf8Columns() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ArrowStreamOutputSink(out, false).close();
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            List<Field> fields = reader.getVectorSchemaRoot().getSchema().getFields();
+            assertEquals(Arrays.asList(DecryptedRows.HEADER), fields.stream().map(Field::getName).toList());
+            for (Field field : fields) {
+                assertInstanceOf(ArrowType.Utf8.class, field.getType(), field.getName());
+                assertFalse(field.isNullable(), field.getName());
+            }
+            assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    @Test
+    void roundTripsRowsInOneBatchPerFlush() throws IOException {
+        List<String[]> rows = rows(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArrowStreamOutputSink sink = new ArrowStreamOutputSink(out, false)) {
+            for (int i = 0; i < rows.size(); i++) {
+                sink.write(rows.get(i));
+                if (i == 2 || i == 3) {
+                    sink.flush();
+                }
+            }
+            // A flush without new rows writes no empty batch.
+            sink.flush();
+        }
+        assertEquals(List.of(3, 1, 6), batchSizes(out.toByteArray()));
+        assertEquals(toLists(rows), read(out.toByteArray()));
+    }
+
+    @Test
+    void startsANewBatchEveryBatchRows() throws IOException {
+        List<String[]> rows = rows(ArrowStreamOutputSink.BATCH_ROWS + 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArrowStreamOutputSink sink = new ArrowStreamOutputSink(out, false)) {
+            for (String[] row : rows) {
+                sink.write(row);
+            }
+        }
+        assertEquals(List.of(ArrowStreamOutputSink.BATCH_ROWS, 5), batchSizes(out.toByteArray()));
+        assertEquals(toLists(rows), read(out.toByteArray()));
+    }
+
+    @Test
+    void appendsToAStreamTruncatedAtACheckpoint() throws IOException {
+        List<String[]> rows = rows(8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowStreamOutputSink first = new ArrowStreamOutputSink(out, false);
+        for (String[] row : rows.subList(0, 5)) {
+            first.write(row);
+        }
+        first.flush();
+        // What a resumed run finds: the stream up to the checkpoint, without the end-of-stream marker.
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+        resumed.write(out.toByteArray());
+        try (ArrowStreamOutputSink second = new ArrowStreamOutputSink(resumed, true)) {
+            for (String[] row : rows.subList(5, 8)) {
+                second.write(row);
+            }
+        }
+        assertEquals(List.of(5, 3), batchSizes(resumed.toByteArray()));
+        assertEquals(toLists(rows), read(resumed.toByteArray()));
+    }
+
+    private static List<String[]> rows(int count) {
+        List<String[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] row = new String[DecryptedRows.HEADER.length];
+            for (int column = 0; column < row.length; column++) {
+                row[column] = column == 1 ? "id-" + i : VALUES[(i + column) % VALUES.length];
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<List<String>> toLists(List<String[]> rows) {
+        return rows.stream().map(Arrays::asList).toList();
+    }
+
+    private static List<Integer> batchSizes(byte[] stream) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator)) {
+            while (reader.loadNextBatch()) {
+                sizes.add(reader.getVectorSchemaRoot().getRowCount());
+            }
+        }
+        return sizes;
+    }
+
+    private static List<List<String>> read(byte[] stream) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    List<String> row = new ArrayList<>();
+                    for (int column = 0; column < root.getFieldVectors().size(); column++) {
+                        VarCharVector vector = (VarCharVector) root.getVector(column);
+                        row.add(new String(vector.get(i), StandardCharsets.UTF_8));
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
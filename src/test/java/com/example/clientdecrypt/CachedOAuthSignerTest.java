@@ -0,0 +1,168 @@
+package com.example.clientdecrypt;
+
+import com.mastercard.developer.oauth.OAuth;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CachedOAuthSigner} against the oauth1-signer library it replaces: with the same nonce and
+ * timestamp, its signature base string must equal the library's, or the API rejects every call.
+ */
+class CachedOAuthSignerTest {
+    private static final String CONSUMER_KEY = "consumer!key-with+chars";
+    private static final List<URI> URIS = List.of(
+        // Plain
+        URI.create("https://api.mastercard.com/srci/api/checkout"),
+        // Escaped query
+        URI.create("https://sandbox.api.mastercard.com/merchantid/v1/merchantid"
+            + "?MerchantId=GOOGLE%20LTD%20ADWORDS%20%28CC%40GOOGLE.COM%29&Format=XML&Type=ExactMatch&partialMatch=true"),
+        // Default ports and upper-case scheme and host
+        URI.create("HTTPS://API.Mastercard.com:443/srci/api/checkout/confirmations"),
+        URI.create("http://localhost:80/srci/api/checkout?x=1"),
+        URI.create("https://localhost:8443/srci/api/checkout"),
+        // Repeated keys, unsorted, and a key without a value
+        URI.create("https://api.mastercard.com/p?b=2&a=1&b=1&a=3&c"));
+    private static final byte[] BODY = "{\"srcDpaId\":\"dpa\",\"note\":\"Zoë & co\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    static void generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    void buildsTheLibrarysSignatureBaseString() throws Exception {
+        CachedOAuthSigner signer = new CachedOAuthSigner(CONSUMER_KEY, keyPair.getPrivate());
+        String bodyHash = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(BODY));
+        for (URI uri : URIS) {
+            for (String method : List.of("POST", "GET")) {
+                assertEquals(
+                    libraryBaseString(uri, method, bodyHash, "AbCdEf0123456789", "1700000000"),
+                    signer.signatureBaseString(uri, method, bodyHash, "AbCdEf0123456789", "1700000000"),
+                    method + " " + uri);
+            }
+        }
+    }
+
+    @Test
+    void signsExactlyAsTheLibraryDoes() throws Exception {
+        CachedOAuthSigner signer = new CachedOAuthSigner(CONSUMER_KEY, keyPair.getPrivate());
+        for (URI uri : URIS) {
+            Map<String, String> library = parameters(OAuth.getAuthorizationHeader(
+                uri, "POST", new String(BODY, StandardCharsets.UTF_8), StandardCharsets.UTF_8, CONSUMER_KEY, keyPair.getPrivate()));
+            // RSA PKCS#1 v1.5 signatures are deterministic: the same base string gives the same signature.
+            String baseString = signer.signatureBaseString(
+                uri, "POST", library.get("oauth_body_hash"), library.get("oauth_nonce"), library.get("oauth_timestamp"));
+            assertEquals(library.get("oauth_signature"), sign(baseString), uri.toString());
+        }
+    }
+
+    @Test
+    void writesAHeaderTheLibraryBaseStringVerifies() throws Exception {
+        CachedOAuthSigner signer = new CachedOAuthSigner(CONSUMER_KEY, keyPair.getPrivate());
+        String bodyHash = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(BODY));
+        for (URI uri : URIS) {
+            Map<String, String> cached = parameters(signer.authorizationHeader(uri, "POST", BODY));
+            Map<String, String> library = parameters(OAuth.getAuthorizationHeader(
+                uri, "POST", new String(BODY, StandardCharsets.UTF_8), StandardCharsets.UTF_8, CONSUMER_KEY, keyPair.getPrivate()));
+            assertEquals(library.keySet(), cached.keySet(), uri.toString());
+            assertEquals(bodyHash, cached.get("oauth_body_hash"));
+            assertEquals(library.get("oauth_consumer_key"), cached.get("oauth_consumer_key"));
+            assertEquals(library.get("oauth_signature_method"), cached.get("oauth_signature_method"));
+            assertEquals(library.get("oauth_version"), cached.get("oauth_version"));
+
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(libraryBaseString(uri, "POST", cached.get("oauth_body_hash"), cached.get("oauth_nonce"),
+                cached.get("oauth_timestamp")).getBytes(StandardCharsets.UTF_8));
+            assertTrue(verifier.verify(Base64.getDecoder().decode(cached.get("oauth_signature"))), uri.toString());
+        }
+    }
+
+    /**
+     * {@code OAuth.getSignatureBaseString(OAuth.getBaseUriString(uri), method, OAuth.getOAuthParamString(...))},
+     * with the query parameters as {@code OAuth.extractQueryParams} collects them. These helpers are
+     * package-private in the library, so they are called reflectively.
+     */
+    private static String libraryBaseString(URI uri, String method, String bodyHash, String nonce, String timestamp)
+        throws Exception {
+        Map<String, String> oauthParameters = new HashMap<>();
+        oauthParameters.put("oauth_consumer_key", CONSUMER_KEY);
+        oauthParameters.put("oauth_nonce", nonce);
+        oauthParameters.put("oauth_signature_method", "RSA-SHA256");
+        oauthParameters.put("oauth_timestamp", timestamp);
+        oauthParameters.put("oauth_version", "1.0");
+        oauthParameters.put("oauth_body_hash", bodyHash);
+
+        Object queryParameters = invoke("extractQueryParams", uri);
+        String parameterString = (String) invoke("getOAuthParamString", queryParameters, oauthParameters);
+        String baseUri = (String) invoke("getBaseUriString", uri);
+        return (String) invoke("getSignatureBaseString", baseUri, method, parameterString);
+    }
+
+    /**
+     * Calls the static {@code OAuth} method {@code name}, passing UTF-8 for a trailing
+     * {@link Charset} parameter where the library version takes one.
+     */
+    private static Object invoke(String name, Object... arguments) throws Exception {
+        for (Method method : OAuth.class.getDeclaredMethods()) {
+            Class<?>[] types = method.getParameterTypes();
+            boolean withCharset = types.length == arguments.length + 1 && types[types.length - 1] == Charset.class;
+            if (method.getName().equals(name) && (types.length == arguments.length || withCharset)) {
+                method.setAccessible(true);
+                Object[] actual = withCharset ? Arrays.copyOf(arguments, types.length) : arguments;
+                if (withCharset) {
+                    actual[types.length - 1] = StandardCharsets.UTF_8;
+                }
+                return method.invoke(null, actual);
+            }
+        }
+        throw new NoSuchMethodException("OAuth." + name);
+    }
+
+    private static String sign(String baseString) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(baseString.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(signature.sign());
+    }
+
+    /**
+     * The parameters of an {@code OAuth k="v",...} header; only the signature is percent-encoded.
+     */
+    private static Map<String, String> parameters(String header) {
+        assertTrue(header.startsWith("OAuth "), header);
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String parameter : header.substring("OAuth ".length()).split(",")) {
+            int equals = parameter.indexOf('=');
+            String value = parameter.substring(equals + 1);
+            assertTrue(value.startsWith("\"") && value.endsWith("\""), header);
+            String name = parameter.substring(0, equals).trim();
+            value = value.substring(1, value.length() - 1);
+            parameters.put(name, "oauth_signature".equals(name) ? URLDecoder.decode(value, StandardCharsets.UTF_8) : value);
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * {@link CsvOutputSink} against the commons-csv {@link CSVPrinter} it replaces: the same rows must
+ * give the same bytes.
+ */
+class CsvOutputSinkTest {
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.builder()
+        .setHeader(DecryptedRows.HEADER)
+        .build();
+    private static final String[] VALUES = {
+        "", " ", "a", "5555555555554444", "12", "2031", "Zoë Ångström", "山田 太郎", "😀", "#", "!x", "x ", " x",
+        "a,b", "say \"hi\"", "\"", "line\nbreak", "cr\rbreak", "\r\n", "tab\t", "\u0000", "é\"", "\ud800", "x\udc00y",
+    };
+
+    @Test
+    void writesWhatCsvPrinterWrites() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            List<Object[]> rows = randomRows(random, random.nextInt(20));
+            assertSameBytes(rows, false);
+            assertSameBytes(rows, true);
+        }
+    }
+
+    @Test
+    void writesFieldsLargerThanItsBuffer() throws IOException {
+        Object[] row = new Object[DecryptedRows.HEADER.length];
+        row[0] = "a,\"b\"".repeat(200_000);
+        row[1] = "ü".repeat(300_000);
+        row[2] = "😀".repeat(100_000);
+        assertSameBytes(List.of(row, row), false);
+    }
+
+    private static void assertSameBytes(List<Object[]> rows, boolean append) throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        CSVFormat format = append ? FORMAT.builder().setSkipHeaderRecord(true).build() : FORMAT;
+        try (CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(expected, StandardCharsets.UTF_8), format)) {
+            for (Object[] row : rows) {
+                printer.printRecord(row);
+            }
+        }
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (CsvOutputSink sink = new CsvOutputSink(actual, append)) {
+            for (int i = 0; i < rows.size(); i++) {
+                sink.write(rows.get(i));
+                if (i % 7 == 3) {
+                    sink.flush();
+                }
+            }
+        }
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    private static List<Object[]> randomRows(Random random, int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Object[] row = new Object[DecryptedRows.HEADER.length];
+            for (int column = 0; column < row.length; column++) {
+                int choice = random.nextInt(10);
+                if (choice == 0) {
+                    row[column] = null;
+                } else if (choice == 1) {
+                    row[column] = VALUES[random.nextInt(VALUES.length)] + VALUES[random.nextInt(VALUES.length)];
+                } else {
+                    row[column] = VALUES[random.nextInt(VALUES.length)];
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
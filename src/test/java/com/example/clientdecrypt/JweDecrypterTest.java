@@ -0,0 +1,240 @@
+package com.example.clientdecrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastercard.developer.encryption.JweConfig;
+import com.mastercard.developer.encryption.JweConfigBuilder;
+import com.mastercard.developer.encryption.JweEncryption;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link JweDecrypter} against the {@code JweEncryption} path it short-cuts: payloads the library
+ * encrypts, and payloads built here for every algorithm pair, must decrypt to what the library
+ * decrypts them to.
+ */
+class JweDecrypterTest {
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final String PASSWORD = "changeit";
+    private static final List<String> PAYLOADS = List.of(
+        "{\"card\":{\"primaryAccountNumber\":\"5555555555554444\",\"panExpirationMonth\":\"12\"}}",
+        "{\"cardholderFullName\":\"Zoë Ångström 山田 \\uD83D\\uDE00\",\"note\":\"\\\"quoted\\\", with comma\"}",
+        "{\"blob\":\"" + "x".repeat(100_000) + "\"}");
+
+    @TempDir
+    static Path keysDir;
+
+    private static PrivateKey privateKey;
+    private static Certificate certificate;
+    private static String kid;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JweDecrypter decrypter = new JweDecrypter(mapper, JweDecrypterTest::registry, 0);
+
+    @BeforeAll
+    static void generateKeyPair() throws Exception {
+        Path keyStore = keysDir.resolve("test.p12");
+        Process keytool = new ProcessBuilder(
+            Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+            "-genkeypair", "-keyalg", "RSA", "-keysize", "2048", "-alias", "test", "-dname", "CN=test",
+            "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        String output = new String(keytool.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, keytool.waitFor(), output);
+
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStore)) {
+            store.load(in, PASSWORD.toCharArray());
+        }
+        privateKey = (PrivateKey) store.getKey("test", PASSWORD.toCharArray());
+        certificate = store.getCertificate("test");
+        kid = DecryptionKeyRegistry.fingerprint(privateKey);
+    }
+
+    @Test
+    void decryptsWhatTheLibraryEncrypts() throws Exception {
+        JweConfig encryptConfig = JweConfigBuilder.aJweEncryptionConfig()
+            .withEncryptionCertificate(certificate)
+            .withEncryptionPath("$", "$")
+            .withEncryptedValueFieldName("encryptedValue")
+            .build();
+        for (String payload : PAYLOADS) {
+            String wrapper = JweEncryption.encryptPayload(payload, encryptConfig);
+            String compactJwe = mapper.readTree(wrapper).path("encryptedValue").asText();
+
+            assertEquals(mapper.readTree(payload), mapper.readTree(decrypter.decrypt(compactJwe)));
+            assertEquals(mapper.readTree(libraryDecrypt(compactJwe)), mapper.readTree(decrypter.decrypt(compactJwe)));
+        }
+    }
+
+    @Test
+    void matchesTheLibraryOnEveryAlgorithmItShares() throws Exception {
+        for (String enc : List.of("A256GCM", "A128CBC-HS256")) {
+            for (String payload : PAYLOADS) {
+                String compactJwe = encrypt("RSA-OAEP-256", enc, payload, keyLength(enc));
+                assertEquals(mapper.readTree(libraryDecrypt(compactJwe)), mapper.readTree(decrypter.decrypt(compactJwe)), enc);
+            }
+        }
+    }
+
+    @Test
+    void decryptsEveryKeyWrapAndContentEncryption() throws Exception {
+        for (String alg : List.of("RSA-OAEP-256", "RSA-OAEP")) {
+            for (String enc : List.of("A128GCM", "A192GCM", "A256GCM", "A128CBC-HS256", "A192CBC-HS384", "A256CBC-HS512")) {
+                for (String payload : PAYLOADS) {
+                    String compactJwe = encrypt(alg, enc, payload, keyLength(enc));
+                    assertArrayEquals(payload.getBytes(StandardCharsets.UTF_8), decrypter.decrypt(compactJwe), alg + " " + enc);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reusesCachedContentKeys() throws Exception {
+        JweDecrypter cached = new JweDecrypter(mapper, JweDecrypterTest::registry, 16);
+        String compactJwe = encrypt("RSA-OAEP-256", "A256GCM", PAYLOADS.get(0), 32);
+        assertArrayEquals(cached.decrypt(compactJwe), cached.decrypt(compactJwe));
+        assertArrayEquals(PAYLOADS.get(0).getBytes(StandardCharsets.UTF_8), cached.decrypt(compactJwe));
+    }
+
+    @Test
+    void rejectsAContentKeyOfTheWrongLength() throws Exception {
+        String shortKey = encrypt("RSA-OAEP-256", "A256GCM", PAYLOADS.get(0), 16);
+        assertThrows(DecryptionFailure.class, () -> decrypter.decrypt(shortKey));
+
+        String longKey = encrypt("RSA-OAEP-256", "A128CBC-HS256", PAYLOADS.get(0), 64);
+        assertThrows(DecryptionFailure.class, () -> decrypter.decrypt(longKey));
+    }
+
+    @Test
+    void rejectsATamperedPayload() throws Exception {
+        for (String enc : List.of("A256GCM", "A128CBC-HS256")) {
+            String[] parts = encrypt("RSA-OAEP-256", enc, PAYLOADS.get(0), keyLength(enc)).split("\\.");
+            byte[] tag = Base64.getUrlDecoder().decode(parts[4]);
+            tag[0] ^= 1;
+            parts[4] = BASE64_URL.encodeToString(tag);
+            String tampered = String.join(".", parts);
+            assertThrows(IOException.class, () -> decrypter.decrypt(tampered), enc);
+        }
+        assertThrows(IOException.class, () -> decrypter.decrypt("not.a.jwe"));
+    }
+
+    @Test
+    void leavesUnsupportedPayloadsToTheLibrary() throws Exception {
+        String header = "{\"kid\":\"" + kid + "\",\"enc\":\"A256GCM\",\"alg\":\"RSA-OAEP-256\",\"zip\":\"DEF\"}";
+        assertNull(decrypter.decrypt(BASE64_URL.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + ".a.b.c.d"));
+
+        String dir = "{\"enc\":\"A256GCM\",\"alg\":\"dir\"}";
+        assertNull(decrypter.decrypt(BASE64_URL.encodeToString(dir.getBytes(StandardCharsets.UTF_8)) + "..b.c.d"));
+    }
+
+    private String libraryDecrypt(String compactJwe) throws Exception {
+        JweConfig decryptConfig = JweConfigBuilder.aJweEncryptionConfig()
+            .withDecryptionKey(privateKey)
+            .withDecryptionPath("$.encryptedValue", "$")
+            .build();
+        String wrapper = mapper.writeValueAsString(mapper.createObjectNode().put("encryptedValue", compactJwe));
+        return JweEncryption.decryptPayload(wrapper, decryptConfig);
+    }
+
+    private static DecryptionKeyRegistry registry() {
+        try {
+            return DecryptionKeyRegistry.of(privateKey, null, List.of());
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int keyLength(String enc) {
+        return switch (enc) {
+            case "A128GCM" -> 16;
+            case "A192GCM" -> 24;
+            case "A256GCM", "A128CBC-HS256" -> 32;
+            case "A192CBC-HS384" -> 48;
+            default -> 64;
+        };
+    }
+
+    /**
+     * Compact JWE per RFC 7516 with a random content-encryption key of {@code keyBytes} bytes.
+     */
+    private static String encrypt(String alg, String enc, String payload, int keyBytes) throws Exception {
+        SecureRandom random = new SecureRandom();
+        String header = "{\"kid\":\"" + kid + "\",\"cty\":\"application/json\",\"enc\":\"" + enc + "\",\"alg\":\"" + alg + "\"}";
+        String encodedHeader = BASE64_URL.encodeToString(header.getBytes(StandardCharsets.UTF_8));
+        byte[] aad = encodedHeader.getBytes(StandardCharsets.US_ASCII);
+        byte[] plaintext = payload.getBytes(StandardCharsets.UTF_8);
+        byte[] contentKey = new byte[keyBytes];
+        random.nextBytes(contentKey);
+
+        PublicKey publicKey = certificate.getPublicKey();
+        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPPadding");
+        rsa.init(Cipher.ENCRYPT_MODE, publicKey, "RSA-OAEP-256".equals(alg)
+            ? new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT)
+            : new OAEPParameterSpec("SHA-1", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT));
+        byte[] encryptedKey = rsa.doFinal(contentKey);
+
+        byte[] iv;
+        byte[] ciphertext;
+        byte[] tag;
+        if (enc.endsWith("GCM")) {
+            iv = new byte[12];
+            random.nextBytes(iv);
+            Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+            gcm.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(contentKey, "AES"), new GCMParameterSpec(128, iv));
+            gcm.updateAAD(aad);
+            byte[] sealed = gcm.doFinal(plaintext);
+            ciphertext = Arrays.copyOf(sealed, sealed.length - 16);
+            tag = Arrays.copyOfRange(sealed, sealed.length - 16, sealed.length);
+        } else {
+            int half = contentKey.length / 2;
+            iv = new byte[16];
+            random.nextBytes(iv);
+            Cipher cbc = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cbc.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(contentKey, half, half, "AES"), new IvParameterSpec(iv));
+            ciphertext = cbc.doFinal(plaintext);
+            Mac mac = Mac.getInstance("HmacSHA" + half * 16);
+            mac.init(new SecretKeySpec(contentKey, 0, half, mac.getAlgorithm()));
+            mac.update(aad);
+            mac.update(iv);
+            mac.update(ciphertext);
+            mac.update(ByteBuffer.allocate(Long.BYTES).putLong((long) aad.length * 8).array());
+            tag = Arrays.copyOf(mac.doFinal(), half);
+        }
+        return encodedHeader
+            + '.' + BASE64_URL.encodeToString(encryptedKey)
+            + '.' + BASE64_URL.encodeToString(iv)
+            + '.' + BASE64_URL.encodeToString(ciphertext)
+            + '.' + BASE64_URL.encodeToString(tag);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.clientdecrypt;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link MappedCsvReader} against the commons-csv parser it replaces for plain files: the same
+ * input must give the same rows, whole or split into byte ranges, with any window size.
+ */
+class MappedCsvReaderTest {
+    // As ClientDecryptApp parses inputs that cannot be mapped.
+    private static final CSVFormat INPUT_FORMAT = CSVFormat.DEFAULT.builder()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setTrim(true)
+        .build();
+    private static final String[] VALUES = {
+        "", " ", "a", "5555555555554444", "  padded  ", "with,comma", "with \"quote\"", "\"", "\"\"",
+        "line\nbreak", "crlf\r\nbreak", "cr\rbreak", "Zoë", "山田", "😀", "#hash", "\ttab\t", "a \"b\", c",
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsLikeCommonsCsv() throws IOException {
+        assertSameRows("cardNumber,merchantTransactionId\n1,a\n2,b\n");
+        assertSameRows("cardNumber,merchantTransactionId\r\n1,a\r\n2,b\r\n");
+        assertSameRows("cardNumber,merchantTransactionId\r1,a\r2,b\r");
+        assertSameRows("cardNumber,merchantTransactionId\n1,a\n2,b");
+        assertSameRows("cardNumber,merchantTransactionId\n\n1,a\n\n\r\n2,b\n\n");
+        assertSameRows("cardNumber,merchantTransactionId\n");
+        assertSameRows(" cardNumber , merchantTransactionId \n  1  ,\ta\t\n");
+        assertSameRows("\"cardNumber\",\"merchantTransactionId\"\n\"1,2\",\"a \"\"b\"\"\"\n\"\",\"\"\n");
+        assertSameRows("cardNumber,merchantTransactionId\n\"multi\nline\",\"cr\rlf\r\n\"\n3,c\n");
+        assertSameRows("other,merchantTransactionId,extra,cardNumber,tenant\nx,a,y,1,acme\nx,b,y,2,\n");
+        assertSameRows("merchantTransactionId\na\nb\n");
+        assertSameRows("cardNumber,merchantTransactionId,tenant\nZoë,山田,😀\n");
+    }
+
+    @Test
+    void readsRandomInputsLikeCommonsCsv() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            String csv = randomCsv(random, random.nextInt(50), random.nextBoolean() ? "\n" : "\r\n");
+            Path file = write(csv);
+            List<List<String>> expected = commonsCsvRows(csv);
+            assertEquals(expected, rows(MappedCsvReader.open(file)), csv);
+            // Windows small enough to remap inside almost every file.
+            assertEquals(expected, rows(MappedCsvReader.open(file, 0, Long.MAX_VALUE, 512)), csv);
+        }
+    }
+
+    @Test
+    void byteRangesCoverEveryRowOnce() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            StringBuilder csv = new StringBuilder("cardNumber,merchantTransactionId,tenant\n");
+            int rows = random.nextInt(40);
+            for (int row = 0; row < rows; row++) {
+                // No quoted line breaks, as ranges require.
+                csv.append(random.nextInt(1000)).append(",\"id ").append(row).append(", ü\",t").append(row % 3).append('\n');
+                if (random.nextInt(5) == 0) {
+                    csv.append('\n');
+                }
+            }
+            Path file = write(csv.toString());
+            long size = Files.size(file);
+            List<List<String>> expected = commonsCsvRows(csv.toString());
+
+            long[] cuts = random.longs(random.nextInt(6), 0, size + 1).sorted().toArray();
+            List<List<String>> actual = new ArrayList<>();
+            long start = 0;
+            for (long cut : cuts) {
+                actual.addAll(rows(MappedCsvReader.open(file, start, cut, 256)));
+                start = cut;
+            }
+            actual.addAll(rows(MappedCsvReader.open(file, start, Long.MAX_VALUE, 256)));
+            assertEquals(expected, actual, csv + " split at " + Arrays.toString(cuts));
+        }
+    }
+
+    @Test
+    void rejectsARowLongerThanTheWindow() throws IOException {
+        Path file = write("cardNumber,merchantTransactionId\n1," + "a".repeat(200) + "\n");
+        try (MappedCsvReader reader = MappedCsvReader.open(file, 0, Long.MAX_VALUE, 64)) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    private void assertSameRows(String csv) throws IOException {
+        Path file = write(csv);
+        List<List<String>> expected = commonsCsvRows(csv);
+        assertEquals(expected, rows(MappedCsvReader.open(file)), csv);
+        assertEquals(expected, rows(MappedCsvReader.open(file, 0, Long.MAX_VALUE, 64)), csv);
+    }
+
+    private Path write(String csv) throws IOException {
+        Path file = Files.createTempFile(dir, "input", ".csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<List<String>> commonsCsvRows(String csv) throws IOException {
+        return rows(InputRows.of(CSVParser.parse(csv, INPUT_FORMAT)));
+    }
+
+    private static List<List<String>> rows(InputRows input) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (input) {
+            while (input.next()) {
+                rows.add(Arrays.asList(input.cardNumber(), input.merchantTransactionId(), input.tenant()));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Random values as CSVPrinter quotes them, under a header with the wanted columns in random
+     * order among others.
+     */
+    private static String randomCsv(Random random, int rows, String recordSeparator) throws IOException {
+        List<String> header = new ArrayList<>(List.of(InputRows.CARD_NUMBER, InputRows.MERCHANT_TRANSACTION_ID, "other"));
+        if (random.nextBoolean()) {
+            header.add(InputRows.TENANT);
+        }
+        Collections.shuffle(header, random);
+        StringWriter out = new StringWriter();
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+            .setHeader(header.toArray(String[]::new))
+            .setRecordSeparator(recordSeparator)
+            .build();
+        try (CSVPrinter printer = new CSVPrinter(out, format)) {
+            for (int row = 0; row < rows; row++) {
+                List<String> values = new ArrayList<>();
+                for (int column = 0; column < header.size(); column++) {
+                    values.add(random.nextInt(3) == 0
+                        ? VALUES[random.nextInt(VALUES.length)] + VALUES[random.nextInt(VALUES.length)]
+                        : VALUES[random.nextInt(VALUES.length)]);
+                }
+                printer.printRecord(values);
+                if (random.nextInt(8) == 0) {
+                    out.write(recordSeparator);
+                }
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.encrypt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastercard.developer.encryption.JweConfig;
+import com.mastercard.developer.encryption.JweConfigBuilder;
+import com.mastercard.developer.encryption.JweEncryption;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link PayloadEncryptor#encryptedValue}, which builds the JWE by hand, against the
+ * {@code JweEncryption} path it short-cuts: the library must decrypt it to the payload, and its
+ * header must be the one the library writes.
+ */
+class PayloadEncryptorTest {
+    private static final String PASSWORD = "changeit";
+    private static final List<String> PAYLOADS = List.of(
+        "{\"card\":{\"primaryAccountNumber\":\"5555555555554444\",\"panExpirationMonth\":\"12\"}}",
+        "{\"cardholderFullName\":\"Zoë Ångström 山田 \\uD83D\\uDE00\",\"note\":\"\\\"quoted\\\", with comma\"}",
+        "{\"blob\":\"" + "x".repeat(100_000) + "\"}");
+
+    @TempDir
+    static Path keysDir;
+
+    private static PrivateKey privateKey;
+    private static Path certificateFile;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeAll
+    static void generateKeyPair() throws Exception {
+        Path keyStore = keysDir.resolve("test.p12");
+        Process keytool = new ProcessBuilder(
+            Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+            "-genkeypair", "-keyalg", "RSA", "-keysize", "2048", "-alias", "test", "-dname", "CN=test",
+            "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        String output = new String(keytool.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, keytool.waitFor(), output);
+
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStore)) {
+            store.load(in, PASSWORD.toCharArray());
+        }
+        privateKey = (PrivateKey) store.getKey("test", PASSWORD.toCharArray());
+        certificateFile = keysDir.resolve("test.der");
+        Files.write(certificateFile, store.getCertificate("test").getEncoded());
+    }
+
+    @Test
+    void encryptsWhatTheLibraryDecrypts() throws Exception {
+        PayloadEncryptor encryptor = new PayloadEncryptor(certificateFile);
+        for (String payload : PAYLOADS) {
+            String compactJwe = encryptor.encryptedValue(payload);
+            assertEquals(mapper.readTree(payload), mapper.readTree(libraryDecrypt(compactJwe)));
+        }
+    }
+
+    @Test
+    void writesTheHeaderTheLibraryWrites() throws Exception {
+        PayloadEncryptor encryptor = new PayloadEncryptor(certificateFile);
+        String library = mapper.readTree(encryptor.encrypt(PAYLOADS.get(0))).path("encryptedValue").asText();
+        assertEquals(header(library), header(encryptor.encryptedValue(PAYLOADS.get(0))));
+    }
+
+    private String libraryDecrypt(String compactJwe) throws Exception {
+        JweConfig decryptConfig = JweConfigBuilder.aJweEncryptionConfig()
+            .withDecryptionKey(privateKey)
+            .withDecryptionPath("$.encryptedValue", "$")
+            .build();
+        String wrapper = mapper.writeValueAsString(mapper.createObjectNode().put("encryptedValue", compactJwe));
+        return JweEncryption.decryptPayload(wrapper, decryptConfig);
+    }
+
+    private Object header(String compactJwe) throws Exception {
+        return mapper.readTree(Base64.getUrlDecoder().decode(compactJwe.substring(0, compactJwe.indexOf('.'))));
+    }
+}